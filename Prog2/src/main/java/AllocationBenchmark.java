@@ -0,0 +1,99 @@
+import backtype.storm.tuple.Values;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import spouts.FlightsDataReader;
+import utility.FlightInformation;
+import utility.SnapshotTokenizer;
+
+import java.io.File;
+import java.io.FileReader;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures the bytes allocated and the time spent per emitted tuple by the spout's emission path, for the tree
+ * parser path the spout used to take (JSONParser, FlightInformation list, Values) and for the streaming
+ * tokenizer it takes now. Allocation is read from the JVM's per-thread allocation counter.
+ * <p>
+ * Usage: AllocationBenchmark &lt;flights file&gt; [iterations, default 20]
+ */
+public class AllocationBenchmark {
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    // Keeps the tuples observable so that the JIT cannot drop their construction
+    private static long sink;
+
+    public static void main(String[] args) throws Exception {
+        File file = new File(args[0]);
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        // Warm up both paths before measuring
+        for (int i = 0; i < Math.max(3, iterations / 4); i++) {
+            treeParser(file);
+            tokenizer(file);
+        }
+        measure("tree parser", file, iterations, false);
+        measure("tokenizer", file, iterations, true);
+        System.out.println("(checksum " + sink + ")");
+    }
+
+    private static void measure(String name, File file, int iterations, boolean streaming) throws Exception {
+        long thread = Thread.currentThread().getId();
+        long tuples = 0;
+        long bytes = THREADS.getThreadAllocatedBytes(thread);
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            tuples += streaming ? tokenizer(file) : treeParser(file);
+        }
+        long nanos = System.nanoTime() - start;
+        bytes = THREADS.getThreadAllocatedBytes(thread) - bytes;
+        System.out.printf("%-12s %,d tuples: %,d bytes/tuple, %,d ns/tuple%n",
+                name, tuples, bytes / tuples, nanos / tuples);
+    }
+
+    // The emission path of the spout before the tokenizer, kept here as the baseline
+    private static long treeParser(File file) throws Exception {
+        List<FlightInformation> flights = new ArrayList<>();
+        long snapshotTime;
+        try (FileReader reader = new FileReader(file)) {
+            JSONObject snapshot = (JSONObject) new JSONParser().parse(reader);
+            Object time = snapshot.get("time");
+            snapshotTime = time == null ? 0 : ((Number) time).longValue();
+            for (Object o : (JSONArray) snapshot.get("states")) {
+                JSONArray state = (JSONArray) o;
+                flights.add(new FlightInformation(
+                        String.valueOf(state.get(0)), String.valueOf(state.get(1)), String.valueOf(state.get(2)),
+                        String.valueOf(state.get(3)), String.valueOf(state.get(4)), String.valueOf(state.get(5)),
+                        String.valueOf(state.get(6)), String.valueOf(state.get(7)), String.valueOf(state.get(8)),
+                        String.valueOf(state.get(9)), String.valueOf(state.get(10)), String.valueOf(state.get(11)),
+                        String.valueOf(state.get(13)), String.valueOf(state.get(12)), String.valueOf(state.get(14)),
+                        String.valueOf(state.get(15)), String.valueOf(state.get(16))));
+            }
+        }
+        long index = 0;
+        for (FlightInformation flight : flights) {
+            Values values = new Values(flight.getTransponderAddress(), flight.getCallSign(), flight.getOriginCountry(),
+                    flight.getStartTimestamp(), flight.getLastTimestamp(), flight.getLongitude(), flight.getLatitude(),
+                    flight.getAltitude(), flight.getIsSurface(), flight.getVelocity(), flight.getDegree(),
+                    flight.getVerticalRate(), flight.getSensors(), flight.getAltitudeGeometric(),
+                    flight.getTransponderCode(), flight.getIsSpecialPurpose(), flight.getOrigin(),
+                    FlightsDataReader.replayOffset(snapshotTime, index++));
+            sink += values.hashCode();
+        }
+        return index;
+    }
+
+    private static long tokenizer(File file) throws Exception {
+        long index = 0;
+        try (SnapshotTokenizer tokenizer = new SnapshotTokenizer(new FileReader(file))) {
+            long snapshotTime = tokenizer.snapshotTime(file);
+            while (tokenizer.nextState()) {
+                Values values = FlightsDataReader.toValues(tokenizer, FlightsDataReader.replayOffset(snapshotTime, index++));
+                sink += values.hashCode();
+            }
+        }
+        return index;
+    }
+}
@@ -0,0 +1,111 @@
+import backtype.storm.Config;
+import backtype.storm.LocalCluster;
+import utility.AckLatencyRecorder;
+import utility.AppliedOffsets;
+import utility.CounterCheckpointStore;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Checks that the checkpointed Airline-Sorter counts survive a restart: runs the topology on synthetic flights in a
+ * LocalCluster once through, then again killed halfway and restarted on the same checkpoints, and compares the
+ * restored counts of the two. Two Hub-Identifier tasks and many tuples in flight make the states of an airport
+ * reach the sorter out of order, on both sides of the restart.
+ * <p>
+ * Usage: RecoveryCheck &lt;flights file&gt; &lt;airports file&gt; [key=value ...], with the options of
+ * TopologyFactory; "SyntheticFlights" defaults to 20000, MaxSpoutPending to 1000, and the checkpoints go under
+ * "RecoveryDir" (default recovery-check). "RecoveryTimeoutSeconds" bounds each run (default 120). Exits with
+ * status 1 if the counts differ.
+ */
+public class RecoveryCheck {
+    public static void main(String[] args) throws InterruptedException, IOException {
+        Config base = TopologyFactory.loadConfig(args);
+        if (!base.containsKey("SyntheticFlights")) {
+            base.put("SyntheticFlights", "20000");
+        }
+        base.put("AckLatency", "true");
+        base.put("Parallelism.Hub-Identifier", "2");
+        base.setMaxSpoutPending(1000);
+        if (!base.containsKey("ResultsDir")) {
+            base.put("ResultsDir", "recovery-results");
+        }
+        long size = Long.parseLong(base.get("SyntheticFlights").toString());
+        long timeoutMs = 1000L * (base.containsKey("RecoveryTimeoutSeconds")
+                ? Long.parseLong(base.get("RecoveryTimeoutSeconds").toString()) : 120);
+        File dir = new File(base.containsKey("RecoveryDir") ? base.get("RecoveryDir").toString() : "recovery-check");
+        File reference = new File(dir, "reference");
+        File restarted = new File(dir, "restarted");
+        delete(reference);
+        delete(restarted);
+
+        LocalCluster cluster = new LocalCluster();
+        run(cluster, base, reference, "Recovery-Reference", size, timeoutMs);
+        run(cluster, base, restarted, "Recovery-Killed", size / 2, timeoutMs);
+        run(cluster, base, restarted, "Recovery-Restarted", size, timeoutMs);
+        cluster.shutdown();
+
+        Map<String, Map<String, Integer>> expected = restore(reference);
+        Map<String, Map<String, Integer>> actual = restore(restarted);
+        int differences = 0;
+        Map<String, Map<String, Integer>> airports = new TreeMap<>(expected);
+        airports.putAll(actual);
+        for (String airport : airports.keySet()) {
+            Map<String, Integer> want = expected.getOrDefault(airport, Collections.emptyMap());
+            Map<String, Integer> got = actual.getOrDefault(airport, Collections.emptyMap());
+            if (!want.equals(got)) {
+                System.out.println(airport + ": expected " + want + ", restored " + got);
+                differences++;
+            }
+        }
+        System.out.println(expected.size() + " airports checked, " + differences + " airports differ");
+        System.exit(differences == 0 ? 0 : 1);
+    }
+
+    // Runs the topology with its checkpoints in the given directory until the given number of states is through
+    private static void run(LocalCluster cluster, Config base, File checkpoints, String name, long states,
+                            long timeoutMs) throws InterruptedException {
+        Config conf = new Config();
+        conf.putAll(base);
+        conf.put("CheckpointDir", checkpoints.getPath());
+        AckLatencyRecorder recorder = AckLatencyRecorder.getInstance();
+        recorder.reset();
+        long start = System.currentTimeMillis();
+        cluster.submitTopology(name, conf, TopologyFactory.build(conf));
+        while (recorder.getAcked() + recorder.getSkipped() < states
+                && System.currentTimeMillis() - start < timeoutMs) {
+            Thread.sleep(10);
+        }
+        System.out.println(name + ": " + recorder.getAcked() + " acked, " + recorder.getSkipped() + " skipped");
+        // Killing drops the tuples still in flight; the sorters write their checkpoints as they shut down
+        cluster.killTopology(name);
+        Thread.sleep(5000);
+    }
+
+    // The counts of every Airline-Sorter task whose checkpoints are in the directory
+    private static Map<String, Map<String, Integer>> restore(File checkpoints) throws IOException {
+        Map<String, Map<String, Integer>> counters = new HashMap<>();
+        File[] files = checkpoints.listFiles((d, file) -> file.endsWith(".ckpt"));
+        for (File file : files == null ? new File[0] : files) {
+            String name = file.getName().substring(0, file.getName().length() - ".ckpt".length());
+            try (CounterCheckpointStore store = new CounterCheckpointStore(checkpoints, name)) {
+                store.restore(counters, new AppliedOffsets());
+            }
+        }
+        return counters;
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
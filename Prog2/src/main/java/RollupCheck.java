@@ -0,0 +1,117 @@
+import backtype.storm.Config;
+import backtype.storm.LocalCluster;
+import utility.AckLatencyRecorder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Checks that the city, country and region rollups agree with each other and with the Airline-Sorter counts once
+ * the input is through: runs the topology on synthetic flights in a LocalCluster with the rollups on, then adds up
+ * the reported totals of each level per region, dimension and value.
+ * <p>
+ * Usage: RollupCheck &lt;flights file&gt; &lt;airports file&gt; [key=value ...], with the options of
+ * TopologyFactory; "SyntheticFlights" defaults to 20000, the results go to "ResultsDir" (default rollup-check) as
+ * JSON lines, and "RollupTimeoutSeconds" bounds the run (default 120). Exits with status 1 if the totals differ.
+ */
+public class RollupCheck {
+    private static final Pattern FIELD = Pattern.compile("\"(\\w+)\":(\"((?:[^\"\\\\]|\\\\.)*)\"|[^,}]*)");
+    private static final List<String> LEVELS = Arrays.asList("city", "country", "region");
+
+    public static void main(String[] args) throws InterruptedException, IOException {
+        Config conf = TopologyFactory.loadConfig(args);
+        if (!conf.containsKey("SyntheticFlights")) {
+            conf.put("SyntheticFlights", "20000");
+        }
+        if (!conf.containsKey("ResultsDir")) {
+            conf.put("ResultsDir", "rollup-check");
+        }
+        conf.put("Rollups", "true");
+        conf.put("AckLatency", "true");
+        conf.put("ResultsFormat", "jsonl");
+        conf.put("Parallelism.Airline-Sorter", "2");
+        conf.put("Parallelism.City-Rollup", "2");
+        conf.put("Parallelism.Country-Rollup", "2");
+        long size = Long.parseLong(conf.get("SyntheticFlights").toString());
+        long timeoutMs = 1000L * (conf.containsKey("RollupTimeoutSeconds")
+                ? Long.parseLong(conf.get("RollupTimeoutSeconds").toString()) : 120);
+        File results = new File(conf.get("ResultsDir").toString());
+        File[] stale = results.listFiles();
+        for (File file : stale == null ? new File[0] : stale) {
+            file.delete();
+        }
+
+        AckLatencyRecorder recorder = AckLatencyRecorder.getInstance();
+        recorder.reset();
+        LocalCluster cluster = new LocalCluster();
+        long start = System.currentTimeMillis();
+        cluster.submitTopology("Rollup-Check", conf, TopologyFactory.build(conf));
+        while (recorder.getAcked() + recorder.getFailed() + recorder.getSkipped() < size
+                && System.currentTimeMillis() - start < timeoutMs) {
+            Thread.sleep(100);
+        }
+        // Give the end of the input time to flush the levels one after the other; no clock tick is needed
+        Thread.sleep(2000);
+        cluster.killTopology("Rollup-Check");
+        Thread.sleep(5000);
+        cluster.shutdown();
+
+        // Totals per level, then region, dimension and value; the sorter totals are the flights counted
+        Map<String, Map<String, Long>> totals = new TreeMap<>();
+        long counted = 0;
+        File[] files = results.listFiles((dir, name) -> name.endsWith(".jsonl"));
+        for (File file : files == null ? new File[0] : files) {
+            try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+                for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                    Map<String, String> record = parse(line);
+                    if ("airport-total".equals(record.get("type"))) {
+                        counted += Long.parseLong(record.get("count"));
+                    } else if ("rollup".equals(record.get("type"))) {
+                        totals.computeIfAbsent(record.get("level"), k -> new TreeMap<>()).merge(record.get("region")
+                                + " " + record.get("dimension") + "=" + record.get("value"),
+                                Long.parseLong(record.get("count")), Long::sum);
+                    }
+                }
+            }
+        }
+        int differences = 0;
+        for (String level : LEVELS) {
+            Map<String, Long> levelTotals = totals.getOrDefault(level, new TreeMap<>());
+            long carriers = 0;
+            for (Map.Entry<String, Long> total : levelTotals.entrySet()) {
+                if (total.getKey().contains(" carrier=")) {
+                    carriers += total.getValue();
+                }
+            }
+            System.out.println(level + ": " + carriers + " flights by carrier, " + counted + " counted");
+            if (carriers != counted) {
+                differences++;
+            }
+            if (!level.equals("city") && !levelTotals.equals(totals.get("city"))) {
+                System.out.println(level + " totals differ from the city totals");
+                differences++;
+            }
+        }
+        System.exit(differences == 0 ? 0 : 1);
+    }
+
+    // The fields of a flat JSON lines record, as text
+    private static Map<String, String> parse(String line) {
+        Map<String, String> record = new HashMap<>();
+        Matcher field = FIELD.matcher(line);
+        while (field.find()) {
+            record.put(field.group(1), field.group(3) != null
+                    ? field.group(3).replace("\\\"", "\"").replace("\\\\", "\\") : field.group(2));
+        }
+        return record;
+    }
+}
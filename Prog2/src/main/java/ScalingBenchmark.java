@@ -0,0 +1,125 @@
+import backtype.storm.Config;
+import backtype.storm.LocalCluster;
+import utility.AckLatencyRecorder;
+import utility.AsyncResultSink;
+import utility.ResultFormat;
+import utility.ResultRecord;
+import utility.ResultSink;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs the topology on synthetic flights in a LocalCluster over a grid of settings, and reports for each one the
+ * throughput, the p50 and p99 complete latency from spout emit to ack, and the heap used.
+ * <p>
+ * Usage: ScalingBenchmark &lt;flights file&gt; &lt;airports file&gt; [key=value ...], with the options of
+ * TopologyFactory plus the grid, each a comma separated list:
+ * <ul>
+ * <li>BenchHubIdentifiers: Hub-Identifier tasks (default 1,2,4)</li>
+ * <li>BenchAirlineSorters: Airline-Sorter tasks (default 1,2)</li>
+ * <li>BenchMaxPending: max spout pending (default 100,1000)</li>
+ * <li>BenchSizes: number of synthetic states (default 100000)</li>
+ * </ul>
+ * "BenchTimeoutSeconds" bounds each run (default 300) and "BenchReport" names the report (default
+ * scaling-report.csv, the extension selecting the format). The bolts' own results go to "ResultsDir" (default
+ * bench-results), so that they do not mix with the report.
+ */
+public class ScalingBenchmark {
+    public static void main(String[] args) throws InterruptedException {
+        Config base = TopologyFactory.loadConfig(args);
+        int[] hubIdentifiers = list(base, "BenchHubIdentifiers", "1,2,4");
+        int[] airlineSorters = list(base, "BenchAirlineSorters", "1,2");
+        int[] maxPending = list(base, "BenchMaxPending", "100,1000");
+        int[] sizes = list(base, "BenchSizes", "100000");
+        long timeoutMs = 1000L * (base.containsKey("BenchTimeoutSeconds")
+                ? Long.parseLong(base.get("BenchTimeoutSeconds").toString()) : 300);
+        String reportName = base.containsKey("BenchReport") ? base.get("BenchReport").toString() : "scaling-report.csv";
+        ResultSink report = new AsyncResultSink(format(reportName), new File(reportName), 0);
+
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        AckLatencyRecorder recorder = AckLatencyRecorder.getInstance();
+        LocalCluster cluster = new LocalCluster();
+        int run = 0;
+        for (int size : sizes) {
+            for (int pending : maxPending) {
+                for (int hubs : hubIdentifiers) {
+                    for (int sorters : airlineSorters) {
+                        Config conf = new Config();
+                        conf.putAll(base);
+                        conf.put("SyntheticFlights", String.valueOf(size));
+                        conf.put("AckLatency", "true");
+                        conf.put("Parallelism.Hub-Identifier", String.valueOf(hubs));
+                        conf.put("Parallelism.Airline-Sorter", String.valueOf(sorters));
+                        conf.setMaxSpoutPending(pending);
+                        if (!conf.containsKey("ResultsDir")) {
+                            conf.put("ResultsDir", "bench-results");
+                        }
+                        String name = "Scaling-Benchmark-" + run++;
+
+                        System.gc();
+                        recorder.reset();
+                        long start = System.currentTimeMillis();
+                        long peakHeap = 0;
+                        cluster.submitTopology(name, conf, TopologyFactory.build(conf));
+                        // Wait until every state has been acked, failed or filtered out
+                        while (recorder.getAcked() + recorder.getFailed() + recorder.getSkipped() < size
+                                && System.currentTimeMillis() - start < timeoutMs) {
+                            Thread.sleep(100);
+                            peakHeap = Math.max(peakHeap, memory.getHeapMemoryUsage().getUsed());
+                        }
+                        boolean complete = recorder.getAcked() + recorder.getFailed() + recorder.getSkipped() >= size;
+                        ResultRecord result = ResultRecord.of("scaling-run")
+                                .with("states", size)
+                                .with("maxPending", pending)
+                                .with("hubIdentifiers", hubs)
+                                .with("airlineSorters", sorters)
+                                .with("complete", complete)
+                                .with("acked", recorder.getAcked())
+                                .with("failed", recorder.getFailed())
+                                .with("tuplesPerSecond", Math.round(recorder.getThroughput()))
+                                .with("p50Millis", round(recorder.getLatencyMillis(0.5)))
+                                .with("p99Millis", round(recorder.getLatencyMillis(0.99)))
+                                .with("peakHeapMB", peakHeap >> 20);
+                        report.write(result);
+                        System.out.println(result.getValues());
+                        cluster.killTopology(name);
+                        // Give the topology time to go away before the next one starts
+                        Thread.sleep(5000);
+                    }
+                }
+            }
+        }
+        report.close();
+        cluster.shutdown();
+        System.out.println("Report written to " + reportName);
+    }
+
+    private static int[] list(Config conf, String key, String defaultValue) {
+        List<Integer> values = new ArrayList<>();
+        for (String value : (conf.containsKey(key) ? conf.get(key).toString() : defaultValue).split(",")) {
+            values.add(Integer.parseInt(value.trim()));
+        }
+        int[] result = new int[values.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = values.get(i);
+        }
+        return result;
+    }
+
+    private static ResultFormat format(String fileName) {
+        for (ResultFormat format : ResultFormat.values()) {
+            if (fileName.endsWith(format.getExtension())) {
+                return format;
+            }
+        }
+        return ResultFormat.TEXT;
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+}
@@ -0,0 +1,261 @@
+import backtype.storm.Config;
+import backtype.storm.LocalCluster;
+import backtype.storm.StormSubmitter;
+import backtype.storm.generated.AlreadyAliveException;
+import backtype.storm.generated.InvalidTopologyException;
+import backtype.storm.generated.StormTopology;
+import backtype.storm.topology.BoltDeclarer;
+import backtype.storm.topology.TopologyBuilder;
+import backtype.storm.transactional.TransactionalTopologyBuilder;
+import backtype.storm.tuple.Fields;
+import bolts.AirlineSorter;
+import bolts.AirportCountCommitter;
+import bolts.AlertSinkBolt;
+import bolts.BatchHubIdentifier;
+import bolts.CongestionDetector;
+import bolts.EventTimeWindowCounter;
+import bolts.HubAnalyticsBolt;
+import bolts.HubIdentifier;
+import bolts.ResultsViewBolt;
+import bolts.RollupAggregator;
+import spouts.ClockSpout;
+import spouts.FlightsDataReader;
+import spouts.SnapshotTransactionalSpout;
+import spouts.SyntheticFlightsReader;
+import utility.FlightBatch;
+import utility.Trace;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Builds and runs the flights topology from its configuration, so that it can be scaled without recompiling.
+ * <p>
+ * The configuration comes from the command line: the flights and airports files, then {@code key=value} options.
+ * "ConfigFile" names a properties file with more options; options on the command line take precedence. Besides
+ * the options of the components themselves:
+ * <ul>
+ * <li>Parallelism.&lt;component&gt;: number of tasks of a spout or bolt, e.g. Parallelism.Hub-Identifier=4
+ * (default 1)</li>
+ * <li>Workers, Ackers, MaxSpoutPending (default 1), MessageTimeoutSecs: the matching Storm settings</li>
+ * <li>Deploy: "local" (default) runs in a LocalCluster for RunSeconds seconds (default 10), "cluster" submits
+ * to the cluster with StormSubmitter</li>
+ * <li>TopologyName (default Getting-Started-Topology)</li>
+ * <li>BatchSize: states per tuple between the spout and Hub-Identifier (default: one tuple per state)</li>
+ * <li>WindowSeconds, AllowedLatenessSeconds, WatermarkLagSeconds: event time windows, see
+ * EventTimeWindowCounter</li>
+ * <li>TraceSampleRate: fraction of the states (or batches) whose latency is traced from the spout to
+ * Airline-Sorter, reported per stage in the sorter's results (default 0)</li>
+ * <li>CheckpointDir, CheckpointInterval, CheckpointFlushMs, ProgressIntervalMs: recoverable Airline-Sorter counts;
+ * the spout then emits its tuples with message ids, so MaxSpoutPending bounds the tuples in flight</li>
+ * </ul>
+ * Any other Storm setting can be given under its own name (e.g. topology.debug=true).
+ */
+public class TopologyFactory {
+    private static final String DEFAULT_NAME = "Getting-Started-Topology";
+
+    // Builds the configuration from the command line arguments
+    public static Config loadConfig(String[] args) {
+        Config conf = new Config();
+        conf.put("FlightsFile", args[0]); // Set the input file for Flights-Data-Reader
+        conf.put("AirportsData", args[1]); // Set the input file for Hub-Identifier
+        Properties options = new Properties();
+        for (int i = 2; i < args.length; i++) {
+            String[] option = args[i].split("=", 2);
+            if (option.length != 2) {
+                throw new IllegalArgumentException("Expected key=value but found '" + args[i] + "'");
+            }
+            options.setProperty(option[0], option[1]);
+        }
+        if (options.containsKey("ConfigFile")) {
+            String file = options.getProperty("ConfigFile");
+            try (Reader in = new FileReader(file)) {
+                Properties fromFile = new Properties();
+                fromFile.load(in);
+                for (String key : fromFile.stringPropertyNames()) {
+                    if (!options.containsKey(key)) {
+                        options.setProperty(key, fromFile.getProperty(key).trim());
+                    }
+                }
+            } catch (IOException e) {
+                throw new RuntimeException("Error reading file [" + file + "]", e);
+            }
+        }
+        for (String key : options.stringPropertyNames()) {
+            String value = options.getProperty(key);
+            conf.put(key, key.startsWith("topology.") || key.startsWith("storm.") ? storm(value) : value);
+        }
+        conf.setDebug(false); // Disable debugging output
+        conf.setMaxSpoutPending(intValue(conf, "MaxSpoutPending", 1));
+        if (conf.containsKey("Workers")) {
+            conf.setNumWorkers(intValue(conf, "Workers", 1));
+        }
+        if (conf.containsKey("Ackers")) {
+            conf.setNumAckers(intValue(conf, "Ackers", 1));
+        }
+        if (conf.containsKey("BatchSize")) {
+            conf.registerSerialization(FlightBatch.class);
+        }
+        if (conf.containsKey("TraceSampleRate")) {
+            conf.registerSerialization(Trace.class);
+        }
+        if (conf.containsKey("MessageTimeoutSecs")) {
+            conf.setMessageTimeoutSecs(intValue(conf, "MessageTimeoutSecs", 30));
+        }
+        return conf;
+    }
+
+    // Builds the topology selected by the configuration
+    public static StormTopology build(Map conf) {
+        // Mode=transactional counts each snapshot as one micro-batch, committed exactly once
+        if ("transactional".equals(conf.get("Mode"))) {
+            return buildTransactional(conf);
+        }
+        TopologyBuilder builder = new TopologyBuilder();
+        // A spout named "Flights-Data-Reader" that reads data from a file, or generates it when a synthetic data
+        // size is configured
+        builder.setSpout("Flights-Data-Reader",
+                conf.containsKey("SyntheticFlights") ? new SyntheticFlightsReader() : new FlightsDataReader(),
+                parallelism(conf, "Flights-Data-Reader"));
+        // A bolt named "Hub-Identifier" that identifies the hubs near each flight; with BatchSize=<n> it receives
+        // batches of n states instead of single states
+        BoltDeclarer hubIdentifier = builder.setBolt("Hub-Identifier", new HubIdentifier(),
+                parallelism(conf, "Hub-Identifier"));
+        if (conf.containsKey("BatchSize")) {
+            hubIdentifier.shuffleGrouping("Flights-Data-Reader", FlightBatch.STREAM);
+        } else {
+            hubIdentifier.shuffleGrouping("Flights-Data-Reader");
+        }
+        boolean rollups = isEnabled(conf, "Rollups");
+        // Hub-Identifier forwards the watermarks of the spout for the event time windows, and for the rollups,
+        // which flush at the end of the input
+        if (conf.containsKey("WindowSeconds") || rollups) {
+            hubIdentifier.allGrouping("Flights-Data-Reader", FlightsDataReader.WATERMARK_STREAM);
+        }
+        // With WindowSeconds=<n>, a bolt named "Window-Counter" counts the flights per airport and carrier in
+        // event time windows of n seconds, following the watermarks the spout sends through Hub-Identifier, and
+        // "Window-Results" writes the windows as they close
+        if (conf.containsKey("WindowSeconds")) {
+            builder.setBolt("Window-Counter", new EventTimeWindowCounter(), parallelism(conf, "Window-Counter"))
+                    .fieldsGrouping("Hub-Identifier", new Fields("airport.code"))
+                    .allGrouping("Hub-Identifier", FlightsDataReader.WATERMARK_STREAM);
+            builder.setBolt("Window-Results", new AlertSinkBolt("window-count"), 1)
+                    .shuffleGrouping("Window-Counter");
+        }
+        // A bolt named "Airline-Sorter" that counts the flights per airport and carrier
+        BoltDeclarer sorter = builder.setBolt("Airline-Sorter", new AirlineSorter(), parallelism(conf, "Airline-Sorter"))
+                .fieldsGrouping("Hub-Identifier", new Fields("airport.city"));
+        // With CheckpointDir set, the spout tracks which states have been acked and Airline-Sorter follows its
+        // progress, so that a restart counts every state exactly once
+        if (conf.containsKey("CheckpointDir")) {
+            sorter.allGrouping("Flights-Data-Reader", FlightsDataReader.PROGRESS_STREAM);
+        }
+        boolean congestionAlerts = isEnabled(conf, "CongestionAlerts");
+        boolean resultsView = conf.containsKey("ResultsPort");
+        // A spout named "Clock" drives the bolts that act periodically
+        if (rollups || congestionAlerts || resultsView) {
+            builder.setSpout("Clock", new ClockSpout(), 1);
+        }
+        // With Rollups=true, the airport counts are rolled up to cities, countries and regions, one bolt per level;
+        // the end of the input watermark follows the last partial counts down the levels, each flushing on it
+        if (rollups) {
+            sorter.allGrouping("Clock", ClockSpout.STREAM)
+                    .allGrouping("Hub-Identifier", FlightsDataReader.WATERMARK_STREAM);
+            builder.setBolt("City-Rollup", new RollupAggregator("city"), parallelism(conf, "City-Rollup"))
+                    .fieldsGrouping("Airline-Sorter", RollupAggregator.STREAM, new Fields("country", "city"))
+                    .allGrouping("Airline-Sorter", FlightsDataReader.WATERMARK_STREAM)
+                    .allGrouping("Clock", ClockSpout.STREAM);
+            builder.setBolt("Country-Rollup", new RollupAggregator("country"), parallelism(conf, "Country-Rollup"))
+                    .fieldsGrouping("City-Rollup", RollupAggregator.STREAM, new Fields("country"))
+                    .allGrouping("City-Rollup", FlightsDataReader.WATERMARK_STREAM)
+                    .allGrouping("Clock", ClockSpout.STREAM);
+            builder.setBolt("Region-Rollup", new RollupAggregator("region"), parallelism(conf, "Region-Rollup"))
+                    .fieldsGrouping("Country-Rollup", RollupAggregator.STREAM, new Fields("region"))
+                    .allGrouping("Country-Rollup", FlightsDataReader.WATERMARK_STREAM)
+                    .allGrouping("Clock", ClockSpout.STREAM);
+        }
+        // With CongestionAlerts=true, a bolt named "Congestion-Detector" compares each snapshot of hub traffic
+        // with its moving baseline, and "Congestion-Alerts" writes the alerts as they come
+        if (congestionAlerts) {
+            builder.setBolt("Congestion-Detector", new CongestionDetector(), parallelism(conf, "Congestion-Detector"))
+                    .fieldsGrouping("Hub-Identifier", new Fields("airport.code"))
+                    .allGrouping("Clock", ClockSpout.STREAM);
+            builder.setBolt("Congestion-Alerts", new AlertSinkBolt("congestion-alert"), 1)
+                    .shuffleGrouping("Congestion-Detector");
+        }
+        // With HubAnalytics=true, a bolt named "Hub-Analytics" reports speed, altitude and vertical rate
+        // distributions per airport
+        if (isEnabled(conf, "HubAnalytics")) {
+            builder.setBolt("Hub-Analytics", new HubAnalyticsBolt(), parallelism(conf, "Hub-Analytics"))
+                    .fieldsGrouping("Hub-Identifier", new Fields("airport.code"));
+        }
+        // With ResultsPort=<port>, a bolt named "Results-View" serves the live counts over HTTP
+        if (resultsView) {
+            builder.setBolt("Results-View", new ResultsViewBolt(), 1)
+                    .fieldsGrouping("Airline-Sorter", new Fields("airport"))
+                    .allGrouping("Clock", ClockSpout.STREAM);
+        }
+        return builder.createTopology();
+    }
+
+    // Micro-batch variant of the topology: partial counts per batch, committed per airport once per transaction
+    private static StormTopology buildTransactional(Map conf) {
+        TransactionalTopologyBuilder builder = new TransactionalTopologyBuilder(
+                "Flights-Transactional", "Snapshot-Reader", new SnapshotTransactionalSpout(), 1);
+        builder.setBolt("Batch-Hub-Identifier", new BatchHubIdentifier(), parallelism(conf, "Batch-Hub-Identifier"))
+                .shuffleGrouping("Snapshot-Reader");
+        builder.setBolt("Airport-Count-Committer", new AirportCountCommitter(),
+                parallelism(conf, "Airport-Count-Committer"))
+                .fieldsGrouping("Batch-Hub-Identifier", new Fields("airport"));
+        return builder.buildTopology();
+    }
+
+    // Runs the topology as configured: for RunSeconds in a local cluster, or submitted to the real cluster
+    public static void run(Config conf) throws InterruptedException {
+        String name = conf.containsKey("TopologyName") ? conf.get("TopologyName").toString() : DEFAULT_NAME;
+        StormTopology topology = build(conf);
+        if ("cluster".equals(conf.get("Deploy"))) {
+            try {
+                StormSubmitter.submitTopology(name, conf, topology);
+            } catch (AlreadyAliveException | InvalidTopologyException e) {
+                throw new RuntimeException("Unable to submit topology " + name, e);
+            }
+            return;
+        }
+        LocalCluster cluster = new LocalCluster(); // Create a local Storm cluster
+        cluster.submitTopology(name, conf, topology); // Submit the topology to the cluster
+        Thread.sleep(1000L * intValue(conf, "RunSeconds", 10));
+        if ("transactional".equals(conf.get("Mode"))) {
+            AirportCountCommitter.printCommittedCounts();
+        }
+        cluster.shutdown(); // Shut down the cluster
+    }
+
+    // Number of tasks configured for the component, 1 by default
+    public static int parallelism(Map conf, String component) {
+        return intValue(conf, "Parallelism." + component, 1);
+    }
+
+    private static boolean isEnabled(Map conf, String key) {
+        return Boolean.parseBoolean(String.valueOf(conf.get(key)));
+    }
+
+    private static int intValue(Map conf, String key, int defaultValue) {
+        return conf.containsKey(key) ? Integer.parseInt(conf.get(key).toString()) : defaultValue;
+    }
+
+    // Storm reads its own settings as numbers and booleans, so their values are converted from the text
+    private static Object storm(String value) {
+        if (value.equals("true") || value.equals("false")) {
+            return Boolean.valueOf(value);
+        }
+        try {
+            return Integer.valueOf(value);
+        } catch (NumberFormatException e) {
+            return value;
+        }
+    }
+}
@@ -4,10 +4,28 @@ import backtype.storm.task.TopologyContext;
 import backtype.storm.topology.BasicOutputCollector;
 import backtype.storm.topology.OutputFieldsDeclarer;
 import backtype.storm.topology.base.BaseBasicBolt;
+import backtype.storm.tuple.Fields;
 import backtype.storm.tuple.Tuple;
+import backtype.storm.tuple.Values;
+import spouts.ClockSpout;
+import spouts.FlightsDataReader;
 import utility.AirportInformation;
+import utility.AppliedOffsets;
+import utility.AsyncResultSink;
+import utility.CounterCheckpointStore;
+import utility.HyperLogLog;
+import utility.ResultRecord;
+import utility.ResultSink;
+import utility.TieredCounterMap;
+import utility.TieredMap;
+import utility.TieredSketchMap;
+import utility.Trace;
+import utility.TraceReport;
+import utility.WatermarkTracker;
 
+import java.io.File;
 import java.io.FileReader;
+import java.io.IOException;
 import java.util.*;
 
 public class AirlineSorter extends BaseBasicBolt {
@@ -17,30 +35,84 @@ public class AirlineSorter extends BaseBasicBolt {
     Map<String, Map<String, Integer>> counters;
     List<AirportInformation> airportInformation;
     private FileReader fileReader;
+    private TopologyContext context;
+    // Spout replay offsets of the applied updates, kept only when checkpointing is enabled. The tuples of an
+    // airport arrive out of order from several Hub-Identifier and spout tasks, so every offset above the floor
+    // up to which all the spout tasks report their states acked is kept, and a replay is skipped only if its own
+    // offset was applied.
+    AppliedOffsets appliedOffsets;
+    // Combined progress of the spout tasks, the smallest offset up to which each has had its states acked
+    private WatermarkTracker progress;
+    private CounterCheckpointStore checkpointStore;
+    private long checkpointInterval;
+    private long flushIntervalMs;
+    private long updatesSinceCheckpoint;
+    private long lastFlush;
+    private ResultSink sink;
+    // Distinct aircraft per airport and carrier, estimated from the transponder addresses
+    Map<String, Map<String, HyperLogLog>> aircraft;
+    private int distinctPrecision;
+    // Counts since the last clock tick per region, country, city, dimension and value, for the rollups
+    private Map<List<String>, Long> pendingRollup;
+    // Whether the rollups are on; without them there are no clock ticks to flush pendingRollup
+    private boolean rollups;
+    // Combined watermark of the Hub-Identifier tasks: the end of the input flushes pendingRollup
+    private WatermarkTracker watermarks;
+    // Latencies of the sampled tuples, from the spout to their count here
+    private TraceReport traces;
+    // Whether the running counts are emitted, only needed by the results view
+    private boolean emitCounts;
     // Define a method to clean up data after the bolt has finished executing
 
     public void cleanup() {
-        // sort the flight count per airport
-        for(Map.Entry<String, Map<String,Integer>> en : counters.entrySet()){
-            Map<String, Integer> sortedAirLines = sortByValue(en.getValue());
-            System.out.println(en.getKey());
-            counters.put(en.getKey(),sortedAirLines);
+        // Leave a compacted checkpoint behind so the next start restores without replaying the log
+        if (checkpointStore != null) {
+            try {
+                checkpointStore.checkpoint(counters, appliedOffsets);
+                checkpointStore.close();
+            } catch (IOException e) {
+                throw new RuntimeException("Error writing checkpoint for " + name + "-" + id, e);
+            }
         }
-        // Loop through each entry in the counters map
+        // Loop through each entry in the counters map, handing the report over to the result sink
         for (Map.Entry<String, Map<String, Integer>> temp : counters.entrySet()) {
             int totalFlights = 0;
-            // Print the name of the airport
-            System.out.println("At Airport: " + temp.getKey());
-            // Loop through each entry in the inner map and print the flight code and its count
-            for (Map.Entry<String, Integer> innerMap : temp.getValue().entrySet()) {
-                System.out.println(innerMap.getKey() + ":" + innerMap.getValue());
+            Map<String, HyperLogLog> carriers = aircraft.getOrDefault(temp.getKey(), Collections.emptyMap());
+            HyperLogLog totalAircraft = new HyperLogLog(distinctPrecision);
+            // One record per flight code and its count at the airport, sorted by count
+            for (Map.Entry<String, Integer> innerMap : sortByValue(temp.getValue()).entrySet()) {
+                HyperLogLog distinct = carriers.get(innerMap.getKey());
+                if (distinct != null) {
+                    totalAircraft.merge(distinct);
+                }
+                sink.write(ResultRecord.of("carrier-count")
+                        .with("airport", temp.getKey())
+                        .with("carrier", innerMap.getKey())
+                        .with("count", innerMap.getValue())
+                        .with("aircraft", distinct == null ? 0 : distinct.estimate()));
                 totalFlights = totalFlights + innerMap.getValue();
             }
-            // Print the total number of flights for the current airport
-            System.out.println("total # flights = " + totalFlights);
-            System.out.println();
+            // The total number of flights for the current airport
+            sink.write(ResultRecord.of("airport-total")
+                    .with("airport", temp.getKey())
+                    .with("count", totalFlights)
+                    .with("aircraft", totalAircraft.estimate()));
+        }
+        traces.write(sink);
+        sink.close();
+        if (counters instanceof TieredMap) {
+            closeTiers("counters", (TieredMap<?>) counters);
+        }
+        if (aircraft instanceof TieredMap) {
+            closeTiers("aircraft", (TieredMap<?>) aircraft);
         }
+    }
 
+    private void closeTiers(String state, TieredMap<?> tiered) {
+        System.out.println(name + "-" + id + " " + state + ": " + tiered.getHotSize() + " airports on the heap, "
+                + tiered.getColdSize() + " spilled, " + tiered.getDemotions() + " demotions, "
+                + tiered.getPromotions() + " promotions");
+        tiered.close();
     }
     //Method to sort the hashmap on the basis of value
     public static Map<String, Integer> sortByValue(Map<String, Integer> hm)
@@ -58,23 +130,102 @@ public class AirlineSorter extends BaseBasicBolt {
     }
     // Define a method to set up the bolt before it starts executing
     public void prepare(Map stormConf, TopologyContext context) {
-        // Initialize the counters map
-        this.counters = new HashMap<String, Map<String, Integer>>();
         // Get the name and ID of the current bolt
         this.name = context.getThisComponentId();
         this.id = context.getThisTaskId();
+        this.context = context;
+        // Initialize the counters and distinct aircraft maps; with HotCounters set, only about that many carrier
+        // counters, and as many carrier sketches, stay on the heap and the least recently updated airports spill
+        // to files in SpillDir
+        if (stormConf.containsKey("HotCounters")) {
+            File spillDir = new File(stormConf.containsKey("SpillDir")
+                    ? stormConf.get("SpillDir").toString() : System.getProperty("java.io.tmpdir"));
+            long hotCounters = Long.parseLong(stormConf.get("HotCounters").toString());
+            this.counters = new TieredCounterMap(hotCounters, new File(spillDir, name + "-" + id + ".spill"));
+            this.aircraft = new TieredSketchMap(hotCounters, new File(spillDir, name + "-" + id + "-aircraft.spill"));
+        } else {
+            this.counters = new HashMap<String, Map<String, Integer>>();
+            this.aircraft = new HashMap<>();
+        }
+        this.pendingRollup = new HashMap<>();
+        this.rollups = Boolean.parseBoolean(String.valueOf(stormConf.get("Rollups")));
+        this.traces = new TraceReport();
+        this.emitCounts = stormConf.containsKey("ResultsPort");
+        // 2^DistinctPrecision bytes per airport and carrier, 1.04 / sqrt(2^DistinctPrecision) standard error
+        this.distinctPrecision = stormConf.containsKey("DistinctPrecision")
+                ? Integer.parseInt(stormConf.get("DistinctPrecision").toString()) : 10;
+        // The report is formatted and written off the executor thread
+        this.sink = AsyncResultSink.create(stormConf, name + "-" + id);
+        // Restore the counters from the local checkpoint store when one is configured
+        if (stormConf.containsKey("CheckpointDir")) {
+            this.checkpointInterval = stormConf.containsKey("CheckpointInterval")
+                    ? Long.parseLong(stormConf.get("CheckpointInterval").toString()) : 100000;
+            this.flushIntervalMs = stormConf.containsKey("CheckpointFlushMs")
+                    ? Long.parseLong(stormConf.get("CheckpointFlushMs").toString()) : 1000;
+            this.checkpointStore = new CounterCheckpointStore(
+                    new File(stormConf.get("CheckpointDir").toString()), name + "-" + id);
+            this.appliedOffsets = new AppliedOffsets();
+            try {
+                long start = System.currentTimeMillis();
+                long replayed = checkpointStore.restore(counters, appliedOffsets);
+                System.out.println(name + "-" + id + ": restored " + counters.size() + " airports ("
+                        + replayed + " log records) in " + (System.currentTimeMillis() - start) + " ms");
+            } catch (IOException e) {
+                throw new RuntimeException("Error restoring checkpoint for " + name + "-" + id, e);
+            }
+            this.lastFlush = System.currentTimeMillis();
+        }
     }
     // Define a method to declare the output fields of the bolt
     public void declareOutputFields(OutputFieldsDeclarer declarer) {
+        // Running count of a carrier at an airport after each update, consumed by the live results view
+        declarer.declare(new Fields("airport", "carrier", "count"));
+        // Partial counts for the city, country and region rollups
+        declarer.declareStream(RollupAggregator.STREAM, RollupAggregator.FIELDS);
+        // The watermarks of Hub-Identifier, forwarded after the partial counts they cover
+        declarer.declareStream(FlightsDataReader.WATERMARK_STREAM, new Fields("watermark"));
     }
     // Define the main method for the bolt, which processes tuples of data
     public void execute(Tuple input, BasicOutputCollector collector) {
+        // On every clock tick the partial counts gathered since the previous one go to the city rollup
+        if (ClockSpout.isTick(input)) {
+            emitRollup(collector);
+            return;
+        }
+        // At the end of the input the last partial counts go to the city rollup ahead of the watermark, so that
+        // the rollup levels agree with the counts here
+        if (FlightsDataReader.WATERMARK_STREAM.equals(input.getSourceStreamId())) {
+            if (watermarks == null) {
+                watermarks = new WatermarkTracker(context.getComponentTasks(input.getSourceComponent()).size());
+            }
+            if (watermarks.update(input.getSourceTask(), input.getLong(0))) {
+                if (watermarks.getWatermark() == Long.MAX_VALUE) {
+                    emitRollup(collector);
+                }
+                collector.emit(FlightsDataReader.WATERMARK_STREAM, new Values(watermarks.getWatermark()));
+            }
+            return;
+        }
+        // Sent by each spout task once its states up to that offset are acked, hence counted here
+        if (FlightsDataReader.PROGRESS_STREAM.equals(input.getSourceStreamId())) {
+            advanceProgress(input);
+            return;
+        }
+        Trace trace = (Trace) input.getValueByField("trace");
+        if (trace != null) {
+            trace = trace.stamp("sorter-receive");
+        }
         // Extract the airport city, airport code, and flight code from the input tuple
         String airportCity = input.getStringByField("airport.city");
         String airportCode = input.getStringByField("airport.code");
         String flightCode = input.getStringByField("flightCallSign");
         // Create a key to represent the airport, which includes the airport code and city
         String key = airportCode + "(" + airportCity + ")";
+        long offset = input.getLongByField("offset");
+        // Tuples the spout replays, after a failure or a restart, may already be part of the counters
+        if (appliedOffsets != null && appliedOffsets.contains(key, offset)) {
+            return;
+        }
         // Check if the counters map already contains the current airport
         if (counters.containsKey(key)) {
             // If it does, update the existing inner map with the new flight code and count
@@ -87,5 +238,72 @@ public class AirlineSorter extends BaseBasicBolt {
             temp.put(flightCode, temp.getOrDefault(flightCode, 0) + 1);
             counters.put(key, temp);
         }
+        if (trace != null) {
+            traces.add(trace.stamp("counted"));
+        }
+        // The same aircraft seen in several snapshots is counted once here
+        aircraft.computeIfAbsent(key, k -> new HashMap<>())
+                .computeIfAbsent(flightCode, k -> new HyperLogLog(distinctPrecision))
+                .add(input.getStringByField("transponderAddress"));
+        if (checkpointStore != null) {
+            appliedOffsets.add(key, offset);
+            logUpdate(key, flightCode, offset);
+        }
+        if (rollups) {
+            addRollup(input, "carrier", flightCode);
+            addRollup(input, "originCountry", input.getStringByField("originCountry"));
+        }
+        // Publish the new running count downstream, when the results view is there to take it
+        if (emitCounts) {
+            collector.emit(new Values(key, flightCode, counters.get(key).get(flightCode)));
+        }
+    }
+
+    private void addRollup(Tuple input, String dimension, String value) {
+        pendingRollup.merge(Arrays.asList(input.getStringByField("airport.region"),
+                input.getStringByField("airport.country"), input.getStringByField("airport.city"),
+                dimension, value), 1L, Long::sum);
+    }
+
+    private void emitRollup(BasicOutputCollector collector) {
+        for (Map.Entry<List<String>, Long> delta : pendingRollup.entrySet()) {
+            Values values = new Values();
+            values.addAll(delta.getKey());
+            values.add(delta.getValue());
+            collector.emit(RollupAggregator.STREAM, values);
+        }
+        pendingRollup.clear();
+    }
+
+    // Moves the applied offsets floor to the combined progress of the spout tasks, logged after the updates it covers
+    private void advanceProgress(Tuple input) {
+        if (progress == null) {
+            progress = new WatermarkTracker(context.getComponentTasks(input.getSourceComponent()).size());
+        }
+        if (progress.update(input.getSourceTask(), input.getLong(0))
+                && appliedOffsets.advance(progress.getWatermark())) {
+            try {
+                checkpointStore.appendFloor(appliedOffsets.getFloor());
+            } catch (IOException e) {
+                throw new RuntimeException("Error writing checkpoint log for " + name + "-" + id, e);
+            }
+        }
+    }
+
+    // Appends the update to the checkpoint log, flushing it periodically and compacting it every checkpointInterval
+    private void logUpdate(String key, String flightCode, long offset) {
+        try {
+            checkpointStore.append(key, flightCode, offset);
+            if (++updatesSinceCheckpoint >= checkpointInterval) {
+                checkpointStore.checkpoint(counters, appliedOffsets);
+                updatesSinceCheckpoint = 0;
+                lastFlush = System.currentTimeMillis();
+            } else if (System.currentTimeMillis() - lastFlush >= flushIntervalMs) {
+                checkpointStore.flush();
+                lastFlush = System.currentTimeMillis();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Error writing checkpoint log for " + name + "-" + id, e);
+        }
     }
 }
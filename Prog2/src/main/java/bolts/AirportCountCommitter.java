@@ -0,0 +1,89 @@
+package bolts;
+
+import backtype.storm.coordination.BatchOutputCollector;
+import backtype.storm.task.TopologyContext;
+import backtype.storm.topology.OutputFieldsDeclarer;
+import backtype.storm.topology.base.BaseTransactionalBolt;
+import backtype.storm.transactional.ICommitter;
+import backtype.storm.transactional.TransactionAttempt;
+import backtype.storm.tuple.Tuple;
+
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Commits the per-airport carrier counts of each batch exactly once. Batches are committed in transaction
+ * order, and every airport remembers the transaction that last updated it: a replayed batch whose transaction
+ * is already stored for an airport is skipped for that airport instead of being added a second time.
+ * <p>
+ * The committed state is a map in the memory of the worker, standing in for a database: it is exactly-once only
+ * while that worker lives, and a worker restart loses it. A real deployment keeps it in an external store.
+ */
+public class AirportCountCommitter extends BaseTransactionalBolt implements ICommitter {
+    // Committed state per airport, shared by the committer tasks of the worker
+    private static final Map<String, CommittedCounts> DATABASE = new ConcurrentHashMap<>();
+
+    private TransactionAttempt attempt;
+    private Map<String, Map<String, Integer>> batch;
+
+    @Override
+    public void prepare(Map conf, TopologyContext context, BatchOutputCollector collector, TransactionAttempt attempt) {
+        this.attempt = attempt;
+        this.batch = new HashMap<>();
+    }
+
+    @Override
+    public void execute(Tuple input) {
+        Map<String, Integer> airport = batch.computeIfAbsent(input.getStringByField("airport"), k -> new HashMap<>());
+        String carrier = input.getStringByField("carrier");
+        airport.put(carrier, airport.getOrDefault(carrier, 0) + input.getIntegerByField("count"));
+    }
+
+    @Override
+    public void finishBatch() {
+        BigInteger txid = attempt.getTransactionId();
+        for (Map.Entry<String, Map<String, Integer>> airport : batch.entrySet()) {
+            CommittedCounts stored = DATABASE.get(airport.getKey());
+            if (stored != null && txid.equals(stored.txid)) {
+                // This batch was already committed for this airport by an earlier attempt
+                continue;
+            }
+            Map<String, Integer> counts = stored == null ? new HashMap<>() : new HashMap<>(stored.counts);
+            for (Map.Entry<String, Integer> carrier : airport.getValue().entrySet()) {
+                counts.put(carrier.getKey(), counts.getOrDefault(carrier.getKey(), 0) + carrier.getValue());
+            }
+            DATABASE.put(airport.getKey(), new CommittedCounts(txid, counts));
+        }
+    }
+
+    @Override
+    public void declareOutputFields(OutputFieldsDeclarer declarer) {
+    }
+
+    // Prints the committed counts in the same layout as the AirlineSorter report
+    public static void printCommittedCounts() {
+        for (Map.Entry<String, CommittedCounts> airport : new TreeMap<>(DATABASE).entrySet()) {
+            int totalFlights = 0;
+            System.out.println("At Airport: " + airport.getKey() + " (committed by tx " + airport.getValue().txid + ")");
+            for (Map.Entry<String, Integer> carrier : AirlineSorter.sortByValue(airport.getValue().counts).entrySet()) {
+                System.out.println(carrier.getKey() + ":" + carrier.getValue());
+                totalFlights = totalFlights + carrier.getValue();
+            }
+            System.out.println("total # flights = " + totalFlights);
+            System.out.println();
+        }
+    }
+
+    private static class CommittedCounts {
+        private final BigInteger txid;
+        private final Map<String, Integer> counts;
+
+        private CommittedCounts(BigInteger txid, Map<String, Integer> counts) {
+            this.txid = txid;
+            this.counts = counts;
+        }
+    }
+}
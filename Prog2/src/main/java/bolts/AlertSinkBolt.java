@@ -0,0 +1,48 @@
+package bolts;
+
+import backtype.storm.task.TopologyContext;
+import backtype.storm.topology.BasicOutputCollector;
+import backtype.storm.topology.OutputFieldsDeclarer;
+import backtype.storm.topology.base.BaseBasicBolt;
+import backtype.storm.tuple.Tuple;
+import utility.AsyncResultSink;
+import utility.ResultRecord;
+import utility.ResultSink;
+
+import java.util.Map;
+
+/**
+ * Writes every incoming tuple to a result sink as a record of the configured type, with the tuple fields as
+ * values. The sink writes as soon as it is idle, so records appear while the topology runs.
+ */
+public class AlertSinkBolt extends BaseBasicBolt {
+    private final String type;
+    private ResultSink sink;
+
+    public AlertSinkBolt(String type) {
+        this.type = type;
+    }
+
+    @Override
+    public void prepare(Map stormConf, TopologyContext context) {
+        this.sink = AsyncResultSink.create(stormConf, context.getThisComponentId() + "-" + context.getThisTaskId());
+    }
+
+    @Override
+    public void execute(Tuple input, BasicOutputCollector collector) {
+        ResultRecord record = ResultRecord.of(type);
+        for (String field : input.getFields()) {
+            record.with(field, input.getValueByField(field));
+        }
+        sink.write(record);
+    }
+
+    @Override
+    public void cleanup() {
+        sink.close();
+    }
+
+    @Override
+    public void declareOutputFields(OutputFieldsDeclarer declarer) {
+    }
+}
@@ -0,0 +1,70 @@
+package bolts;
+
+import backtype.storm.coordination.BatchOutputCollector;
+import backtype.storm.task.TopologyContext;
+import backtype.storm.topology.OutputFieldsDeclarer;
+import backtype.storm.topology.base.BaseBatchBolt;
+import backtype.storm.tuple.Fields;
+import backtype.storm.tuple.Tuple;
+import backtype.storm.tuple.Values;
+import utility.AirportIndex;
+import utility.AirportInformation;
+import utility.CallsignResolver;
+import utility.ReloadingAirportIndex;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Micro-batch counterpart of HubIdentifier: matches the flights of one batch against the airports and emits,
+ * when the batch is complete, the partial carrier counts per airport for that batch.
+ */
+public class BatchHubIdentifier extends BaseBatchBolt<Object> {
+    private BatchOutputCollector collector;
+    private Object id;
+    private AirportIndex airportIndex;
+    private CallsignResolver callsignResolver;
+    private Map<String, Map<String, Integer>> counts;
+
+    @Override
+    public void prepare(Map conf, TopologyContext context, BatchOutputCollector collector, Object id) {
+        this.collector = collector;
+        this.id = id;
+        this.counts = new HashMap<>();
+        // A batch bolt is instantiated for every batch; the resolver and the index are shared per worker, and a
+        // batch matches all its flights against the same version of the index
+        long reloadMs = conf.containsKey("AirportsReloadMs") ? Long.parseLong(conf.get("AirportsReloadMs").toString()) : 0;
+        this.callsignResolver = CallsignResolver.shared(conf);
+        this.airportIndex = ReloadingAirportIndex.forFile(conf.get("AirportsData").toString(), reloadMs).get();
+    }
+
+    @Override
+    public void execute(Tuple input) {
+        String longitude = input.getStringByField("longitude");
+        String latitude = input.getStringByField("latitude");
+        String carrier = callsignResolver.carrier(input.getStringByField("callSign"));
+        if (carrier == null || longitude.equals("null") || latitude.equals("null")) {
+            return;
+        }
+        for (AirportInformation information : airportIndex.match(Double.parseDouble(latitude),
+                Double.parseDouble(longitude))) {
+            String key = information.getAirportCode() + "(" + information.getAirportCity() + ")";
+            Map<String, Integer> airport = counts.computeIfAbsent(key, k -> new HashMap<>());
+            airport.put(carrier, airport.getOrDefault(carrier, 0) + 1);
+        }
+    }
+
+    @Override
+    public void finishBatch() {
+        for (Map.Entry<String, Map<String, Integer>> airport : counts.entrySet()) {
+            for (Map.Entry<String, Integer> carrier : airport.getValue().entrySet()) {
+                collector.emit(new Values(id, airport.getKey(), carrier.getKey(), carrier.getValue()));
+            }
+        }
+    }
+
+    @Override
+    public void declareOutputFields(OutputFieldsDeclarer declarer) {
+        declarer.declare(new Fields("txid", "airport", "carrier", "count"));
+    }
+}
@@ -0,0 +1,151 @@
+package bolts;
+
+import backtype.storm.task.TopologyContext;
+import backtype.storm.topology.BasicOutputCollector;
+import backtype.storm.topology.OutputFieldsDeclarer;
+import backtype.storm.topology.base.BaseBasicBolt;
+import backtype.storm.tuple.Fields;
+import backtype.storm.tuple.Tuple;
+import backtype.storm.tuple.Values;
+import spouts.ClockSpout;
+import spouts.FlightsDataReader;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Watches the number of flights near each hub, and of each carrier at each hub, snapshot after snapshot, and
+ * emits an alert when a snapshot deviates from the usual traffic by more than "AlertThreshold" standard
+ * deviations (default 3). The usual traffic is an exponentially weighted moving mean and variance with weight
+ * "AlertAlpha" (default 0.2) for the newest snapshot, so the state of a series is a few numbers however long the
+ * topology runs. A series only alerts after "AlertWarmup" snapshots (default 5), and carrier series only once
+ * their mean reaches "AlertMinMean" flights (default 5), where a few flights more or less are not noise.
+ * <p>
+ * A hub's snapshot is closed when its first tuple of a later snapshot arrives, or on the first clock tick after
+ * a whole clock interval without tuples for the hub, so an alert follows its snapshot within about one
+ * interval. Carriers absent from a closed snapshot count as zero.
+ */
+public class CongestionDetector extends BaseBasicBolt {
+    private Map<String, Hub> hubs;
+    private double alpha;
+    private double threshold;
+    private int warmup;
+    private double minMean;
+    private long idleMs;
+
+    @Override
+    public void prepare(Map stormConf, TopologyContext context) {
+        this.hubs = new HashMap<>();
+        this.alpha = stormConf.containsKey("AlertAlpha") ? Double.parseDouble(stormConf.get("AlertAlpha").toString()) : 0.2;
+        this.threshold = stormConf.containsKey("AlertThreshold")
+                ? Double.parseDouble(stormConf.get("AlertThreshold").toString()) : 3;
+        this.warmup = stormConf.containsKey("AlertWarmup") ? Integer.parseInt(stormConf.get("AlertWarmup").toString()) : 5;
+        this.minMean = stormConf.containsKey("AlertMinMean")
+                ? Double.parseDouble(stormConf.get("AlertMinMean").toString()) : 5;
+        this.idleMs = stormConf.containsKey("ClockIntervalMs")
+                ? Long.parseLong(stormConf.get("ClockIntervalMs").toString()) : 1000;
+    }
+
+    @Override
+    public void execute(Tuple input, BasicOutputCollector collector) {
+        long now = System.currentTimeMillis();
+        if (ClockSpout.isTick(input)) {
+            for (Map.Entry<String, Hub> hub : hubs.entrySet()) {
+                if (hub.getValue().open && now - hub.getValue().lastUpdate >= idleMs) {
+                    close(hub.getKey(), hub.getValue(), collector);
+                }
+            }
+            return;
+        }
+        String airport = input.getStringByField("airport.code") + "(" + input.getStringByField("airport.city") + ")";
+        long snapshot = FlightsDataReader.snapshotTime(input.getLongByField("offset"));
+        Hub hub = hubs.get(airport);
+        if (hub == null) {
+            hub = new Hub();
+            hubs.put(airport, hub);
+        }
+        if (hub.open && snapshot != hub.snapshot) {
+            // Late tuples of a snapshot already closed are not counted again
+            if (snapshot < hub.snapshot) {
+                return;
+            }
+            close(airport, hub, collector);
+        }
+        if (!hub.open) {
+            if (snapshot <= hub.snapshot) {
+                return;
+            }
+            hub.open = true;
+            hub.snapshot = snapshot;
+        }
+        hub.lastUpdate = now;
+        hub.traffic.count++;
+        String carrier = input.getStringByField("flightCallSign");
+        Series series = hub.carriers.get(carrier);
+        if (series == null) {
+            series = new Series();
+            hub.carriers.put(carrier, series);
+        }
+        series.count++;
+    }
+
+    // Compares the finished snapshot of a hub with its baselines, then folds it into them
+    private void close(String airport, Hub hub, BasicOutputCollector collector) {
+        check(airport, "*", hub.snapshot, hub.traffic, 0, collector);
+        for (Iterator<Map.Entry<String, Series>> it = hub.carriers.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, Series> carrier = it.next();
+            check(airport, carrier.getKey(), hub.snapshot, carrier.getValue(), minMean, collector);
+            // Carriers that have not been seen for long have a baseline of practically zero: forget them
+            if (carrier.getValue().count == 0 && carrier.getValue().mean < 0.01) {
+                it.remove();
+            }
+        }
+        for (Series series : hub.carriers.values()) {
+            series.count = 0;
+        }
+        hub.traffic.count = 0;
+        hub.open = false;
+    }
+
+    private void check(String airport, String carrier, long snapshot, Series series, double minMean,
+                       BasicOutputCollector collector) {
+        double deviation = series.count - series.mean;
+        double standardDeviation = Math.sqrt(series.variance);
+        if (series.samples >= warmup && series.mean >= minMean
+                && Math.abs(deviation) > threshold * Math.max(standardDeviation, 1)) {
+            collector.emit(new Values(airport, carrier, snapshot, series.count, round(series.mean),
+                    round(deviation / Math.max(standardDeviation, 1))));
+        }
+        double increment = alpha * deviation;
+        series.mean += increment;
+        series.variance = (1 - alpha) * (series.variance + deviation * increment);
+        series.samples++;
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+
+    @Override
+    public void declareOutputFields(OutputFieldsDeclarer declarer) {
+        // deviation is in standard deviations of the baseline, negative for a drop in traffic
+        declarer.declare(new Fields("airport", "carrier", "snapshotTime", "count", "baseline", "deviation"));
+    }
+
+    // Moving baseline of one count series, and its count in the open snapshot
+    private static class Series {
+        long count;
+        double mean;
+        double variance;
+        long samples;
+    }
+
+    private static class Hub {
+        final Series traffic = new Series();
+        final Map<String, Series> carriers = new HashMap<>();
+        long snapshot = Long.MIN_VALUE;
+        boolean open;
+        long lastUpdate;
+    }
+}
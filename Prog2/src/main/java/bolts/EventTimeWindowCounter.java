@@ -0,0 +1,130 @@
+package bolts;
+
+import backtype.storm.task.TopologyContext;
+import backtype.storm.topology.BasicOutputCollector;
+import backtype.storm.topology.OutputFieldsDeclarer;
+import backtype.storm.topology.base.BaseBasicBolt;
+import backtype.storm.tuple.Fields;
+import backtype.storm.tuple.Tuple;
+import backtype.storm.tuple.Values;
+import spouts.FlightsDataReader;
+import utility.WatermarkTracker;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Counts the flights per airport and carrier in tumbling event time windows of "WindowSeconds", by the last
+ * contact time of the states rather than the order they arrive in.
+ * <p>
+ * A window is emitted once the watermark passes its end, and kept for "AllowedLatenessSeconds" more (default
+ * 0): a late flight within that time updates the window, which is emitted again with late set to true. Once
+ * the watermark passes the end of the allowed lateness the window is released, and flights that still arrive
+ * for it are dropped and counted.
+ */
+public class EventTimeWindowCounter extends BaseBasicBolt {
+    private long windowSize;
+    private long allowedLateness;
+    // Open windows by start time, each with its counts per airport and carrier
+    private TreeMap<Long, Window> windows;
+    private WatermarkTracker watermarks;
+    private TopologyContext context;
+    private long dropped;
+    private String name;
+
+    @Override
+    public void prepare(Map stormConf, TopologyContext context) {
+        this.windowSize = Long.parseLong(stormConf.get("WindowSeconds").toString());
+        this.allowedLateness = stormConf.containsKey("AllowedLatenessSeconds")
+                ? Long.parseLong(stormConf.get("AllowedLatenessSeconds").toString()) : 0;
+        this.windows = new TreeMap<>();
+        this.context = context;
+        this.name = context.getThisComponentId() + "-" + context.getThisTaskId();
+    }
+
+    @Override
+    public void execute(Tuple input, BasicOutputCollector collector) {
+        if (FlightsDataReader.WATERMARK_STREAM.equals(input.getSourceStreamId())) {
+            if (watermarks == null) {
+                watermarks = new WatermarkTracker(context.getComponentTasks(input.getSourceComponent()).size());
+            }
+            if (watermarks.update(input.getSourceTask(), input.getLong(0))) {
+                advance(watermarks.getWatermark(), collector);
+            }
+            return;
+        }
+        long eventTime = input.getLongByField("eventTime");
+        long start = eventTime - Math.floorMod(eventTime, windowSize);
+        long watermark = watermarks == null ? Long.MIN_VALUE : watermarks.getWatermark();
+        // Released windows are gone for good: their flights are too late to count
+        if (isReleased(start, watermark)) {
+            dropped++;
+            return;
+        }
+        Window window = windows.get(start);
+        if (window == null) {
+            window = new Window();
+            windows.put(start, window);
+        }
+        String airport = input.getStringByField("airport.code") + "(" + input.getStringByField("airport.city") + ")";
+        String carrier = input.getStringByField("flightCallSign");
+        Map<String, Long> counts = window.counts.get(airport);
+        if (counts == null) {
+            counts = new HashMap<>();
+            window.counts.put(airport, counts);
+        }
+        long count = counts.merge(carrier, 1L, Long::sum);
+        // A window the watermark has already passed is emitted, again or for the first time, right away
+        if (window.fired || start + windowSize <= watermark) {
+            window.fired = true;
+            collector.emit(new Values(start, start + windowSize, airport, carrier, count, true));
+        }
+    }
+
+    // Emits the windows the watermark has passed and releases those past their allowed lateness
+    private void advance(long watermark, BasicOutputCollector collector) {
+        for (Iterator<Map.Entry<Long, Window>> it = windows.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Long, Window> entry = it.next();
+            long start = entry.getKey();
+            if (start + windowSize > watermark) {
+                // Later windows end later still
+                break;
+            }
+            Window window = entry.getValue();
+            if (!window.fired) {
+                for (Map.Entry<String, Map<String, Long>> airport : window.counts.entrySet()) {
+                    for (Map.Entry<String, Long> carrier : airport.getValue().entrySet()) {
+                        collector.emit(new Values(start, start + windowSize, airport.getKey(), carrier.getKey(),
+                                carrier.getValue(), false));
+                    }
+                }
+                window.fired = true;
+            }
+            if (isReleased(start, watermark)) {
+                it.remove();
+            }
+        }
+    }
+
+    // Whether the watermark is past the end of the window and its allowed lateness
+    private boolean isReleased(long start, long watermark) {
+        return watermark != Long.MIN_VALUE && start + windowSize + allowedLateness <= watermark;
+    }
+
+    @Override
+    public void cleanup() {
+        System.out.println(name + ": " + windows.size() + " windows open, " + dropped + " late flights dropped");
+    }
+
+    @Override
+    public void declareOutputFields(OutputFieldsDeclarer declarer) {
+        declarer.declare(new Fields("windowStart", "windowEnd", "airport", "carrier", "count", "late"));
+    }
+
+    private static class Window {
+        final Map<String, Map<String, Long>> counts = new HashMap<>();
+        boolean fired;
+    }
+}
@@ -0,0 +1,105 @@
+package bolts;
+
+import backtype.storm.task.TopologyContext;
+import backtype.storm.topology.BasicOutputCollector;
+import backtype.storm.topology.OutputFieldsDeclarer;
+import backtype.storm.topology.base.BaseBasicBolt;
+import backtype.storm.tuple.Tuple;
+import utility.AsyncResultSink;
+import utility.LogHistogram;
+import utility.ResultRecord;
+import utility.ResultSink;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Keeps the distributions of speed, barometric altitude and vertical rate of the flights matched to each hub,
+ * as {@link LogHistogram}s of a few KB per airport instead of the raw values, and reports their quantiles in
+ * cleanup(). Alongside the hubs it owns, every task reports the merge of all of them as airport "ALL". With
+ * several tasks that merge covers only the hubs of the task, so it is labelled "ALL@&lt;task id&gt;" instead; the
+ * partial merges of the tasks together make up the whole.
+ */
+public class HubAnalyticsBolt extends BaseBasicBolt {
+    private static final String[] METRICS = {"velocity", "altitude", "verticalRate"};
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99};
+
+    private Map<String, LogHistogram[]> histograms;
+    private ResultSink sink;
+    // Airport under which the merge of the hubs of this task is reported
+    private String allLabel;
+
+    @Override
+    public void prepare(Map stormConf, TopologyContext context) {
+        this.histograms = new HashMap<>();
+        this.sink = AsyncResultSink.create(stormConf, context.getThisComponentId() + "-" + context.getThisTaskId());
+        this.allLabel = context.getComponentTasks(context.getThisComponentId()).size() > 1
+                ? "ALL@" + context.getThisTaskId() : "ALL";
+    }
+
+    @Override
+    public void execute(Tuple input, BasicOutputCollector collector) {
+        String key = input.getStringByField("airport.code") + "(" + input.getStringByField("airport.city") + ")";
+        LogHistogram[] airport = histograms.get(key);
+        if (airport == null) {
+            airport = newHistograms();
+            histograms.put(key, airport);
+        }
+        for (int i = 0; i < METRICS.length; i++) {
+            // Missing values arrive as "null", e.g. the altitude of an aircraft on the ground
+            String value = input.getStringByField(METRICS[i]);
+            if (!"null".equals(value)) {
+                airport[i].add(Double.parseDouble(value));
+            }
+        }
+    }
+
+    @Override
+    public void cleanup() {
+        LogHistogram[] all = newHistograms();
+        for (Map.Entry<String, LogHistogram[]> airport : new TreeMap<>(histograms).entrySet()) {
+            for (int i = 0; i < METRICS.length; i++) {
+                report(airport.getKey(), i, airport.getValue()[i]);
+                all[i].merge(airport.getValue()[i]);
+            }
+        }
+        for (int i = 0; i < METRICS.length; i++) {
+            report(allLabel, i, all[i]);
+        }
+        sink.close();
+    }
+
+    private void report(String airport, int metric, LogHistogram histogram) {
+        if (histogram.getCount() == 0) {
+            return;
+        }
+        ResultRecord record = ResultRecord.of("airport-distribution")
+                .with("airport", airport)
+                .with("metric", METRICS[metric])
+                .with("count", histogram.getCount())
+                .with("min", histogram.getMin())
+                .with("mean", round(histogram.getMean()));
+        for (double quantile : QUANTILES) {
+            record.with("p" + Math.round(quantile * 100), round(histogram.quantile(quantile)));
+        }
+        sink.write(record.with("max", histogram.getMax()));
+    }
+
+    // Velocity in m/s, altitude in m and vertical rate in m/s, with the resolution and range of each
+    private static LogHistogram[] newHistograms() {
+        return new LogHistogram[]{
+                new LogHistogram(0.1, 1000),
+                new LogHistogram(1, 25000),
+                new LogHistogram(0.1, 200)
+        };
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+
+    @Override
+    public void declareOutputFields(OutputFieldsDeclarer declarer) {
+    }
+}
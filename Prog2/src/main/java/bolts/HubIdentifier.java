@@ -6,48 +6,96 @@ import backtype.storm.topology.base.BaseBasicBolt;
 import backtype.storm.tuple.Fields;
 import backtype.storm.tuple.Tuple;
 import backtype.storm.tuple.Values;
+import spouts.FlightsDataReader;
+import utility.AirportIndex;
 import utility.AirportInformation;
+import utility.CallsignResolver;
+import utility.FlightBatch;
+import utility.ReloadingAirportIndex;
+import utility.Trace;
+import utility.WatermarkTracker;
 
-import java.io.BufferedReader;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 public class HubIdentifier extends BaseBasicBolt {
-    List<AirportInformation> airportInformation;
-    private FileReader fileReader;
+    // Current airport index, swapped in the background when the airports file changes
+    ReloadingAirportIndex airports;
+    // Resolves call signs to carriers, so that only airline flights are matched and sent downstream
+    CallsignResolver callsignResolver;
+    // Pool that matches large batches in parallel, shared by the tasks of the worker, or null to match inline
+    ForkJoinPool matchPool;
+    // Smallest batch that is matched in the pool
+    int parallelMatchThreshold;
+    private static ForkJoinPool sharedMatchPool;
+    // Watermark of the spout tasks, forwarded once all of them have passed it, created on the first watermark
+    WatermarkTracker watermarks;
+    private TopologyContext context;
 
     // Cleanup method required by BaseBasicBolt but not used in this implementation
     public void cleanup() {
     }
 
-    // Prepare method that initializes the fileReader and airportInformation list
+    // Prepare method that loads the airports and, with AirportsReloadMs set, watches the file for changes
     public void prepare(Map stormConf, TopologyContext context) {
-        try {
-            // Opening the file with the path specified in the topology configuration
-            this.fileReader = new FileReader(stormConf.get("AirportsData").toString());
-        } catch (FileNotFoundException e) {
-            throw new RuntimeException("Error reading file [" + stormConf.get("AirportsData") + "]");
+        long reloadMs = stormConf.containsKey("AirportsReloadMs")
+                ? Long.parseLong(stormConf.get("AirportsReloadMs").toString()) : 0;
+        // Loading the airports from the file specified in the topology configuration
+        airports = ReloadingAirportIndex.forFile(stormConf.get("AirportsData").toString(), reloadMs);
+        callsignResolver = CallsignResolver.fromConfig(stormConf);
+        this.context = context;
+        // With MatchThreads set, batches of at least ParallelMatchThreshold states are matched in a bounded pool
+        int matchThreads = stormConf.containsKey("MatchThreads")
+                ? Integer.parseInt(stormConf.get("MatchThreads").toString()) : 0;
+        parallelMatchThreshold = stormConf.containsKey("ParallelMatchThreshold")
+                ? Integer.parseInt(stormConf.get("ParallelMatchThreshold").toString()) : 1024;
+        if (matchThreads > 1) {
+            matchPool = matchPool(matchThreads);
         }
-        // Creating airportInformation list by calling the creatingAirportInformation() method
-        airportInformation = creatingAirportInformation();
+    }
+
+    // One pool per worker, however many Hub-Identifier tasks it runs, so that the thread count stays bounded
+    private static synchronized ForkJoinPool matchPool(int threads) {
+        if (sharedMatchPool == null) {
+            sharedMatchPool = new ForkJoinPool(threads);
+        }
+        return sharedMatchPool;
     }
 
     // Execute method that performs the main logic of identifying the hub airports
     @Override
     public void execute(Tuple input, BasicOutputCollector collector) {
+        // In batch mode the whole batch is matched in one loop, within a single execute()
+        if (FlightBatch.STREAM.equals(input.getSourceStreamId())) {
+            executeBatch((FlightBatch) input.getValue(0), collector);
+            return;
+        }
+        // Sent after the tuples it covers, so it is forwarded after the matches of those tuples
+        if (FlightsDataReader.WATERMARK_STREAM.equals(input.getSourceStreamId())) {
+            if (watermarks == null) {
+                watermarks = new WatermarkTracker(context.getComponentTasks(input.getSourceComponent()).size());
+            }
+            if (watermarks.update(input.getSourceTask(), input.getLong(0))) {
+                collector.emit(FlightsDataReader.WATERMARK_STREAM, new Values(watermarks.getWatermark()));
+            }
+            return;
+        }
         // Retrieving the longitude, latitude, and call sign from the input tuple
         String longitude = input.getStringByField("longitude");
         String latitude = input.getStringByField("latitude");
-        String callSign = input.getStringByField("callSign");
-        // Removing any leading/trailing whitespace from the call sign
-        callSign = callSign.trim();
-        // If call sign is not empty or "null", only the first 3 characters are considered
-        boolean callSignCheckPass = !callSign.equals("")  &&  !callSign.equals("null");
-        if( callSignCheckPass)
-        {
-            callSign = callSign.substring(0,Math.min(3,callSign.length()));
+        String callSign = callsignResolver.carrier(input.getStringByField("callSign"));
+        Long offset = input.getLongByField("offset");
+        Trace trace = (Trace) input.getValueByField("trace");
+        if (trace != null) {
+            trace = trace.stamp("hub-receive");
+        }
+        String lastTimestamp = input.getStringByField("lastTimestamp");
+        // Registrations and other non-airline call signs are dropped here, before the shuffle to the sorters
+        if (callSign == null) {
+            return;
         }
         // Checking if longitude and latitude are null values
         boolean isLongitudeNull = longitude.equals("null");
@@ -57,52 +105,131 @@ public class HubIdentifier extends BaseBasicBolt {
             // Parsing the longitude and latitude values from strings to Doubles
             double flightLongitude = Double.parseDouble(longitude);
             double flightLatitude = Double.parseDouble(latitude);
-            // Iterating through the airportInformation list to identify hub airports
-            for (AirportInformation information : airportInformation) {
-                // Calculating the longitude and latitude differences between the flight and airport coordinates
-                int longitudeChangePerDegree = 45;
-                double longitudeCheck = Math.abs((flightLongitude - information.getLongitude()) * longitudeChangePerDegree);
-                int latitudeChangePerDegree = 70;
-                double latitudeCheck = Math.abs((flightLatitude - information.getLatitude()) * latitudeChangePerDegree);
-                if (longitudeCheck <= 20 && latitudeCheck <= 20 && callSignCheckPass) {
-                    // Emitting a tuple for each hub airport found
-                    collector.emit(
-                            new Values(
-                                    information.getAirportCity(),
-                                    information.getAirportCode(),
-                                    callSign));
-                }
+            List<AirportInformation> matches = airports.get().match(flightLatitude, flightLongitude);
+            if (trace != null) {
+                trace = trace.stamp("hub-emit");
+            }
+            // Emitting a tuple for each hub airport near the flight
+            for (AirportInformation information : matches) {
+                collector.emit(
+                        new Values(
+                                information.getAirportCity(),
+                                information.getAirportCode(),
+                                callSign,
+                                offset,
+                                input.getStringByField("velocity"),
+                                input.getStringByField("altitudeBarometric"),
+                                input.getStringByField("verticalRate"),
+                                input.getStringByField("transponderAddress"),
+                                information.getCountry(),
+                                information.getRegion(),
+                                input.getStringByField("originCountry"),
+                                lastTimestamp.equals("null") ? FlightsDataReader.snapshotTime(offset)
+                                        : (long) Double.parseDouble(lastTimestamp),
+                                trace));
             }
         }
     }
 
-    @Override
-    public void declareOutputFields(OutputFieldsDeclarer declarer) {
-        declarer.declare(new Fields("airport.city", "airport.code", "flightCallSign"));
-    }
-
-    private List<AirportInformation> creatingAirportInformation() {
-        String str;
-        //Open the reader
-        BufferedReader br = new BufferedReader(fileReader);
-        //Read all lines
-        List<AirportInformation> ai = new ArrayList<>();
-        try {
-            while ((str = br.readLine()) != null) {
-                String[] airportDetails = str.split(",");
-                AirportInformation airport = new AirportInformation(
-                        airportDetails[0],
-                        airportDetails[1],
-                        Double.parseDouble(airportDetails[2]), Double.parseDouble(airportDetails[3]));
-                ai.add(airport);
-                br.readLine();
+    private void executeBatch(FlightBatch batch, BasicOutputCollector collector) {
+        Trace trace = batch.getTrace();
+        if (trace != null) {
+            trace = trace.stamp("hub-receive");
+        }
+        AirportIndex index = airports.get();
+        // Carriers are resolved here, so that the pool threads do not contend for the resolver's cache
+        String[] carriers = new String[batch.size()];
+        for (int i = 0; i < carriers.length; i++) {
+            carriers[i] = callsignResolver.carrier(batch.getCallSign(i));
+        }
+        List<List<AirportInformation>> matches = null;
+        if (matchPool != null && batch.size() >= parallelMatchThreshold) {
+            // Only the matching runs in the pool; the results are emitted below, on the executor thread,
+            // because the collector must not be used from other threads
+            matches = new ArrayList<>(Collections.nCopies(batch.size(), null));
+            matchPool.invoke(new MatchTask(index, batch, carriers, matches, 0, batch.size(),
+                    Math.max(64, batch.size() / (4 * matchPool.getParallelism()))));
+            if (trace != null) {
+                trace = trace.stamp("hub-emit");
+            }
+        } else if (trace != null) {
+            // A traced batch is matched before emitting, so that the stamps separate matching from emitting
+            matches = new ArrayList<>(Collections.nCopies(batch.size(), null));
+            new MatchTask(index, batch, carriers, matches, 0, batch.size(), batch.size()).compute();
+            trace = trace.stamp("hub-emit");
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            String callSign = carriers[i];
+            if (callSign == null) {
+                continue;
+            }
+            // Missing positions are NaN, which matches no airport
+            List<AirportInformation> near = matches != null ? matches.get(i)
+                    : index.match(batch.getLatitude(i), batch.getLongitude(i));
+            for (AirportInformation information : near) {
+                collector.emit(
+                        new Values(
+                                information.getAirportCity(),
+                                information.getAirportCode(),
+                                callSign,
+                                batch.getOffset(i),
+                                FlightBatch.text(batch.getVelocity(i)),
+                                FlightBatch.text(batch.getAltitude(i)),
+                                FlightBatch.text(batch.getVerticalRate(i)),
+                                batch.getTransponderAddress(i),
+                                information.getCountry(),
+                                information.getRegion(),
+                                batch.getOriginCountry(i),
+                                batch.getEventTime(i),
+                                trace));
             }
-        } catch (Exception ignored) {
         }
-        return ai;
     }
-}
 
+    // Matches a range of the batch against the index, splitting it in halves down to the chunk size
+    private static class MatchTask extends RecursiveAction {
+        private final AirportIndex index;
+        private final FlightBatch batch;
+        private final String[] carriers;
+        // Filled in place: each task sets only the elements of its own range
+        private final List<List<AirportInformation>> matches;
+        private final int from;
+        private final int to;
+        private final int chunk;
 
+        MatchTask(AirportIndex index, FlightBatch batch, String[] carriers,
+                  List<List<AirportInformation>> matches, int from, int to, int chunk) {
+            this.index = index;
+            this.batch = batch;
+            this.carriers = carriers;
+            this.matches = matches;
+            this.from = from;
+            this.to = to;
+            this.chunk = chunk;
+        }
 
+        @Override
+        protected void compute() {
+            if (to - from > chunk) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new MatchTask(index, batch, carriers, matches, from, middle, chunk),
+                        new MatchTask(index, batch, carriers, matches, middle, to, chunk));
+                return;
+            }
+            for (int i = from; i < to; i++) {
+                // Flights without a carrier are not emitted, so they need not be matched
+                if (carriers[i] != null) {
+                    matches.set(i, index.match(batch.getLatitude(i), batch.getLongitude(i)));
+                }
+            }
+        }
+    }
 
+    @Override
+    public void declareOutputFields(OutputFieldsDeclarer declarer) {
+        declarer.declare(new Fields("airport.city", "airport.code", "flightCallSign", "offset",
+                "velocity", "altitude", "verticalRate", "transponderAddress",
+                "airport.country", "airport.region", "originCountry", "eventTime", "trace"));
+        declarer.declareStream(FlightsDataReader.WATERMARK_STREAM, new Fields("watermark"));
+    }
+}
@@ -0,0 +1,85 @@
+package bolts;
+
+import backtype.storm.task.TopologyContext;
+import backtype.storm.topology.BasicOutputCollector;
+import backtype.storm.topology.OutputFieldsDeclarer;
+import backtype.storm.topology.base.BaseBasicBolt;
+import backtype.storm.tuple.Tuple;
+import spouts.ClockSpout;
+import utility.CarrierCountView;
+import utility.ResultsHttpServer;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps the {@link CarrierCountView} up to date from the running counts emitted by AirlineSorter, and starts the
+ * results HTTP server when "ResultsPort" is configured.
+ * <p>
+ * Updates are applied to a private copy; the airports that changed are re-published as immutable snapshots at
+ * most every "ViewPublishMs" milliseconds (default 100), so the cost of copying is paid per interval rather than
+ * per tuple. Clock ticks publish what is pending too, so the last updates before the input goes quiet show up
+ * within a clock interval; whatever is still pending is published in cleanup(), which also releases the server.
+ */
+public class ResultsViewBolt extends BaseBasicBolt {
+    private CarrierCountView view;
+    private Map<String, Map<String, Integer>> counts;
+    private Set<String> dirty;
+    private long publishIntervalMs;
+    private long lastPublish;
+    private boolean serving;
+
+    @Override
+    public void prepare(Map stormConf, TopologyContext context) {
+        this.view = CarrierCountView.getInstance();
+        this.counts = new HashMap<>();
+        this.dirty = new HashSet<>();
+        this.publishIntervalMs = stormConf.containsKey("ViewPublishMs")
+                ? Long.parseLong(stormConf.get("ViewPublishMs").toString()) : 100;
+        if (stormConf.containsKey("ResultsPort")) {
+            ResultsHttpServer.start(Integer.parseInt(stormConf.get("ResultsPort").toString()), view);
+            this.serving = true;
+        }
+    }
+
+    @Override
+    public void execute(Tuple input, BasicOutputCollector collector) {
+        if (ClockSpout.isTick(input)) {
+            if (!dirty.isEmpty()) {
+                publish();
+            }
+            return;
+        }
+        String airport = input.getStringByField("airport");
+        // The counts are running totals, so the latest value simply replaces the previous one
+        counts.computeIfAbsent(airport, k -> new HashMap<>())
+                .put(input.getStringByField("carrier"), input.getIntegerByField("count"));
+        dirty.add(airport);
+        if (System.currentTimeMillis() - lastPublish >= publishIntervalMs) {
+            publish();
+        }
+    }
+
+    @Override
+    public void cleanup() {
+        publish();
+        if (serving) {
+            ResultsHttpServer.stop();
+            serving = false;
+        }
+    }
+
+    private void publish() {
+        for (String airport : dirty) {
+            view.publish(airport, counts.get(airport));
+        }
+        dirty.clear();
+        lastPublish = System.currentTimeMillis();
+    }
+
+    @Override
+    public void declareOutputFields(OutputFieldsDeclarer declarer) {
+    }
+}
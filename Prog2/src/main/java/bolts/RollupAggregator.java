@@ -0,0 +1,146 @@
+package bolts;
+
+import backtype.storm.task.TopologyContext;
+import backtype.storm.topology.BasicOutputCollector;
+import backtype.storm.topology.OutputFieldsDeclarer;
+import backtype.storm.topology.base.BaseBasicBolt;
+import backtype.storm.tuple.Fields;
+import backtype.storm.tuple.Tuple;
+import backtype.storm.tuple.Values;
+import spouts.ClockSpout;
+import spouts.FlightsDataReader;
+import utility.AsyncResultSink;
+import utility.ResultRecord;
+import utility.ResultSink;
+import utility.WatermarkTracker;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * One level of the city, country and region rollups of the airport counts. It receives partial counts on the
+ * "rollup" stream from the level below (AirlineSorter for the city level), adds them up per location of its own
+ * level, and on every clock tick passes what changed since the previous tick on to the level above. Each level
+ * only ever sees merged partial counts, never the flights themselves, so it can run with its own parallelism.
+ * <p>
+ * Counts are kept per dimension: "carrier" counts flights by airline, "originCountry" by the country of
+ * registration of the aircraft. The totals of the level are reported in cleanup().
+ * <p>
+ * The end of the input comes down the chain as a Long.MAX_VALUE watermark from every task of the level below; the
+ * level then passes on what is pending before forwarding the watermark, so that once the input is through, the
+ * totals of every level agree.
+ */
+public class RollupAggregator extends BaseBasicBolt {
+    public static final String STREAM = "rollup";
+    public static final Fields FIELDS = new Fields("region", "country", "city", "dimension", "value", "count");
+    // Location fields, coarsest first
+    private static final String[] LOCATION = {"region", "country", "city"};
+    // Placeholder for the location fields finer than the level of a partial count
+    public static final String ANY = "*";
+
+    // "city", "country" or "region"
+    private final String level;
+    // Number of leading location fields that identify a location of this level
+    private final int locationFields;
+    private Map<List<String>, Long> totals;
+    private Map<List<String>, Long> pending;
+    private ResultSink sink;
+    private TopologyContext context;
+    // Combined watermark of the tasks of the level below
+    private WatermarkTracker watermarks;
+
+    public RollupAggregator(String level) {
+        this.level = level;
+        this.locationFields = Arrays.asList(LOCATION).indexOf(level) + 1;
+        if (locationFields == 0) {
+            throw new IllegalArgumentException("Unknown rollup level: " + level);
+        }
+    }
+
+    @Override
+    public void prepare(Map stormConf, TopologyContext context) {
+        this.totals = new HashMap<>();
+        this.pending = new HashMap<>();
+        this.context = context;
+        this.sink = AsyncResultSink.create(stormConf, context.getThisComponentId() + "-" + context.getThisTaskId());
+    }
+
+    @Override
+    public void execute(Tuple input, BasicOutputCollector collector) {
+        if (ClockSpout.isTick(input)) {
+            flush(collector);
+            return;
+        }
+        if (FlightsDataReader.WATERMARK_STREAM.equals(input.getSourceStreamId())) {
+            if (watermarks == null) {
+                watermarks = new WatermarkTracker(context.getComponentTasks(input.getSourceComponent()).size());
+            }
+            if (watermarks.update(input.getSourceTask(), input.getLong(0))) {
+                if (watermarks.getWatermark() == Long.MAX_VALUE) {
+                    flush(collector);
+                }
+                collector.emit(FlightsDataReader.WATERMARK_STREAM, new Values(watermarks.getWatermark()));
+            }
+            return;
+        }
+        // Region, country and city, with the fields finer than this level merged away, then dimension and value
+        List<String> key = new ArrayList<>(5);
+        for (int i = 0; i < LOCATION.length; i++) {
+            key.add(i < locationFields ? input.getStringByField(LOCATION[i]) : ANY);
+        }
+        key.add(input.getStringByField("dimension"));
+        key.add(input.getStringByField("value"));
+        long count = input.getLongByField("count");
+        totals.merge(key, count, Long::sum);
+        pending.merge(key, count, Long::sum);
+    }
+
+    // Passes what changed since the previous flush on to the level above
+    private void flush(BasicOutputCollector collector) {
+        for (Map.Entry<List<String>, Long> delta : pending.entrySet()) {
+            Values values = new Values();
+            values.addAll(delta.getKey());
+            values.add(delta.getValue());
+            collector.emit(STREAM, values);
+        }
+        pending.clear();
+    }
+
+    @Override
+    public void cleanup() {
+        Map<List<String>, Long> sorted = new TreeMap<>(RollupAggregator::compare);
+        sorted.putAll(totals);
+        for (Map.Entry<List<String>, Long> total : sorted.entrySet()) {
+            List<String> key = total.getKey();
+            ResultRecord record = ResultRecord.of("rollup").with("level", level);
+            for (int i = 0; i < locationFields; i++) {
+                record.with(LOCATION[i], key.get(i));
+            }
+            sink.write(record
+                    .with("dimension", key.get(3))
+                    .with("value", key.get(4))
+                    .with("count", total.getValue()));
+        }
+        sink.close();
+    }
+
+    private static int compare(List<String> a, List<String> b) {
+        for (int i = 0; i < a.size(); i++) {
+            int order = a.get(i).compareTo(b.get(i));
+            if (order != 0) {
+                return order;
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    public void declareOutputFields(OutputFieldsDeclarer declarer) {
+        declarer.declareStream(STREAM, FIELDS);
+        declarer.declareStream(FlightsDataReader.WATERMARK_STREAM, new Fields("watermark"));
+    }
+}
@@ -0,0 +1,58 @@
+package spouts;
+
+import backtype.storm.spout.SpoutOutputCollector;
+import backtype.storm.task.TopologyContext;
+import backtype.storm.topology.OutputFieldsDeclarer;
+import backtype.storm.topology.base.BaseRichSpout;
+import backtype.storm.tuple.Fields;
+import backtype.storm.tuple.Tuple;
+import backtype.storm.tuple.Values;
+
+import java.util.Map;
+
+/**
+ * Emits the current time on the "clock" stream every "ClockIntervalMs" milliseconds (default 1000). Bolts that
+ * need to act periodically, also when no data arrives, subscribe to it with an all grouping; this Storm version
+ * has no tick tuples of its own.
+ */
+public class ClockSpout extends BaseRichSpout {
+    public static final String STREAM = "clock";
+
+    private SpoutOutputCollector collector;
+    private long intervalMs;
+    private long next;
+
+    // Whether the tuple is a clock tick rather than data
+    public static boolean isTick(Tuple tuple) {
+        return STREAM.equals(tuple.getSourceStreamId());
+    }
+
+    @Override
+    public void open(Map conf, TopologyContext context, SpoutOutputCollector collector) {
+        this.collector = collector;
+        this.intervalMs = conf.containsKey("ClockIntervalMs")
+                ? Long.parseLong(conf.get("ClockIntervalMs").toString()) : 1000;
+        this.next = System.currentTimeMillis() + intervalMs;
+    }
+
+    @Override
+    public void nextTuple() {
+        long now = System.currentTimeMillis();
+        if (now < next) {
+            try {
+                Thread.sleep(Math.min(next - now, 10));
+            } catch (InterruptedException e) {
+                // Do nothing if we get interrupted while waiting.
+            }
+            return;
+        }
+        // Ticks are not anchored: a lost tick is simply made up for by the next one
+        collector.emit(STREAM, new Values(now));
+        next = now + intervalMs;
+    }
+
+    @Override
+    public void declareOutputFields(OutputFieldsDeclarer declarer) {
+        declarer.declareStream(STREAM, new Fields("time"));
+    }
+}
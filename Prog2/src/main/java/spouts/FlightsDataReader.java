@@ -6,30 +6,82 @@ import backtype.storm.topology.OutputFieldsDeclarer;
 import backtype.storm.topology.base.BaseRichSpout;
 import backtype.storm.tuple.Fields;
 import backtype.storm.tuple.Values;
-import org.json.simple.JSONArray;
-import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
-import utility.FlightInformation;
+import utility.FlightBatch;
+import utility.InterestFilter;
+import utility.SnapshotTokenizer;
+import utility.Trace;
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
-import java.util.ArrayList;
+import java.io.IOException;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 
 public class FlightsDataReader extends BaseRichSpout {
+    public static final String WATERMARK_STREAM = "watermark";
+    public static final String PROGRESS_STREAM = "progress";
+    // Fields with few distinct values: origin country, on ground, sensors, squawk, special purpose, position source
+    private static final boolean[] INTERNED_FIELDS = {
+            false, false, true, false, false, false, false, false, true,
+            false, false, false, true, false, true, true, true
+    };
     private SpoutOutputCollector collector; // for emitting the output tuples
-    private FileReader fileReader;
+    private File flightsFile;
+    // Streams the states of the snapshot one at a time, opened on the first call of nextTuple()
+    private SnapshotTokenizer tokenizer;
     private boolean completed = false;
+    private long snapshotTime;
+    // Position within the snapshot of the next state, for the replay offsets
+    private long position;
+    private InterestFilter interestFilter;
+    // States per tuple on the batch stream, 0 to emit one tuple per state
+    private int batchSize;
+    // Event time: states whose position is older than maxPositionAge seconds are stale, and with watermarks on,
+    // the spout promises on the watermark stream that no state older than the watermark follows, bar the
+    // states that arrive up to watermarkLag seconds out of order
+    private long maxPositionAge = -1;
+    private boolean watermarks;
+    private long watermarkLag;
+    private long maxEventTime = Long.MIN_VALUE;
+    private long lastWatermark = Long.MIN_VALUE;
+    // Every traceEvery-th state (or batch) carries a trace, none when 0
+    private long traceEvery;
+    private long untilTrace;
+    // With progress tracking on, the tuples not acked yet by the offset of their first state, which is their
+    // message id, and the highest offset emitted; the progress goes out every progressIntervalMs
+    private TreeMap<Long, Pending> pending;
+    private long lastOffset = -1;
+    private long lastProgress = -1;
+    private long progressIntervalMs;
+    private long lastProgressTime;
+
+    // A tuple kept until it is acked, to emit it again if it fails
+    private static class Pending {
+        final String stream;
+        final Values values;
+
+        Pending(String stream, Values values) {
+            this.stream = stream;
+            this.values = values;
+        }
+    }
 
     public void ack(Object msgId) {
-        System.out.println("OK:" + msgId);
+        if (pending != null) {
+            pending.remove(msgId);
+        }
     }
 
     public void close() {
     }
 
+    // A failed tuple is emitted again with the same message id, so the progress waits until it is acked
     public void fail(Object msgId) {
-        System.out.println("FAIL:" + msgId);
+        Pending tuple = pending == null ? null : pending.get(msgId);
+        if (tuple != null) {
+            emitTuple(collector, tuple.stream, tuple.values, msgId);
+        }
     }
 
     public void nextTuple() {
@@ -38,6 +90,7 @@ public class FlightsDataReader extends BaseRichSpout {
          * completed processing the data, we will wait for some time and then return.
          */
         if (completed) {
+            emitProgress(collector, true);
             try {
                 Thread.sleep(10000); // Wait for 10 seconds.
             } catch (InterruptedException e) {
@@ -46,37 +99,68 @@ public class FlightsDataReader extends BaseRichSpout {
             return;
         }
         try {
-            // Create a list of FlightInformation objects by calling the creatingFlightList() method.
-            List<FlightInformation> fInfo = creatingFlightList();
-            // Loop through the FlightInformation objects in the list and emit a tuple for each one.
-            for (FlightInformation individualFlightDetails : fInfo) {
-                // Emit a tuple with the following values.
-                this.collector.emit(new Values(
-                        individualFlightDetails.getTransponderAddress(),
-                        individualFlightDetails.getCallSign(),
-                        individualFlightDetails.getOriginCountry(),
-                        individualFlightDetails.getStartTimestamp(),
-                        individualFlightDetails.getLastTimestamp(),
-                        individualFlightDetails.getLongitude(),
-                        individualFlightDetails.getLatitude(),
-                        individualFlightDetails.getAltitude(),
-                        individualFlightDetails.getIsSurface(),
-                        individualFlightDetails.getVelocity(),
-                        individualFlightDetails.getDegree(),
-                        individualFlightDetails.getVerticalRate(),
-                        individualFlightDetails.getSensors(),
-                        individualFlightDetails.getAltitudeGeometric(),
-                        individualFlightDetails.getTransponderCode(),
-                        individualFlightDetails.getIsSpecialPurpose(),
-                        individualFlightDetails.getOrigin()
-                ));
+            if (tokenizer == null) {
+                tokenizer = new SnapshotTokenizer(new FileReader(flightsFile));
+                // The snapshot time identifies the snapshot in the replay offsets; it may follow the states
+                snapshotTime = tokenizer.snapshotTime(flightsFile);
             }
-        } catch (Exception e) {
-            // Throw a RuntimeException if there is an error reading the tuple.
-            throw new RuntimeException("Error reading tuple", e);
-        } finally {
-            // Set completed to true to indicate that we have finished processing the data.
+            // One state per call, so that the spout never holds more than the state it is emitting; in batch
+            // mode one batch per call
+            FlightBatch batch = batchSize > 0 ? new FlightBatch(batchSize) : null;
+            do {
+                long ingest = ingestTime();
+                if (!tokenizer.nextState()) {
+                    tokenizer.close();
+                    // Set completed to true to indicate that we have finished processing the data.
+                    completed = true;
+                    // No state follows the last one, so every window can close
+                    advanceWatermark(Long.MAX_VALUE);
+                    break;
+                }
+                long index = position++;
+                if (tokenizer.getFieldCount() < 17) {
+                    System.err.println("Skipping state " + index + " of [" + flightsFile + "]: only "
+                            + tokenizer.getFieldCount() + " fields");
+                    continue;
+                }
+                // Drop states of untracked carriers or far from every hub before converting any field
+                if (interestFilter != null && (tokenizer.isNull(1)
+                        || !interestFilter.accept(tokenizer.chars(1), tokenizer.number(5), tokenizer.number(6)))) {
+                    continue;
+                }
+                if (isStale(snapshotTime, tokenizer.number(3))) {
+                    continue;
+                }
+                long offset = replayOffset(snapshotTime, index);
+                advanceWatermark(eventTime(snapshotTime, tokenizer.number(4)));
+                if (batch == null) {
+                    Trace trace = sampleTrace(ingest);
+                    Values values = toValues(tokenizer, offset);
+                    values.add(trace == null ? null : trace.stamp("spout-emit"));
+                    emitState(collector, null, values, offset, offset);
+                    break;
+                }
+                if (batch.size() == 0) {
+                    batch.setTrace(sampleTrace(ingest));
+                }
+                batch.add(tokenizer.string(0), tokenizer.string(1), tokenizer.internedString(2),
+                        tokenizer.number(5), tokenizer.number(6), tokenizer.number(9), tokenizer.number(7),
+                        tokenizer.number(11), eventTime(snapshotTime, tokenizer.number(4)), offset);
+            } while (batch == null || !batch.isFull());
+            if (batch != null && batch.size() > 0) {
+                if (batch.getTrace() != null) {
+                    batch.setTrace(batch.getTrace().stamp("spout-emit"));
+                }
+                emitState(collector, FlightBatch.STREAM, new Values(batch), batch.getOffset(0),
+                        batch.getOffset(batch.size() - 1));
+            }
+            // The watermark follows the states it covers, on every stream
+            emitWatermark(collector);
+            emitProgress(collector, completed);
+        } catch (IOException e) {
             completed = true;
+            // Throw a RuntimeException if there is an error reading the tuple.
+            throw new RuntimeException("Error reading file [" + flightsFile + "]", e);
         }
     }
     /**
@@ -84,12 +168,151 @@ public class FlightsDataReader extends BaseRichSpout {
      * called when the spout task is initialized
      */
     public void open(Map conf, TopologyContext context, SpoutOutputCollector collector) {
-        try {
-            this.fileReader = new FileReader(conf.get("FlightsFile").toString());
-        } catch (FileNotFoundException e) {
-            throw new RuntimeException("Error reading file [" + conf.get("FlightsFile") + "]");
+        this.flightsFile = new File(conf.get("FlightsFile").toString());
+        if (!flightsFile.isFile()) {
+            throw new RuntimeException("Error reading file [" + conf.get("FlightsFile") + "]",
+                    new FileNotFoundException(flightsFile.getPath()));
         }
         this.collector = collector; // collector initialized
+        openInterestFilter(conf);
+        this.batchSize = batchSize(conf);
+        openEventTime(conf);
+        openTracing(conf);
+        openProgress(conf, collector);
+    }
+
+    // States per batch tuple configured under "BatchSize", 0 (the default) for one tuple per state
+    protected static int batchSize(Map conf) {
+        return conf.containsKey("BatchSize") ? Integer.parseInt(conf.get("BatchSize").toString()) : 0;
+    }
+
+    // Sets up the interest filter configured for the topology, see InterestFilter.fromConfig()
+    protected void openInterestFilter(Map conf) {
+        this.interestFilter = InterestFilter.fromConfig(conf);
+    }
+
+    /**
+     * Sets up the event time handling: "MaxPositionAgeSeconds" drops the states whose position is older than that
+     * at the snapshot time, and with "WindowSeconds" set watermarks are emitted, "WatermarkLagSeconds" (default
+     * 15) behind the latest last contact time seen. The rollups ("Rollups") need the watermarks too, for the end
+     * of the input.
+     */
+    protected void openEventTime(Map conf) {
+        this.maxPositionAge = conf.containsKey("MaxPositionAgeSeconds")
+                ? Long.parseLong(conf.get("MaxPositionAgeSeconds").toString()) : -1;
+        this.watermarks = conf.containsKey("WindowSeconds")
+                || Boolean.parseBoolean(String.valueOf(conf.get("Rollups")));
+        this.watermarkLag = conf.containsKey("WatermarkLagSeconds")
+                ? Long.parseLong(conf.get("WatermarkLagSeconds").toString()) : 15;
+    }
+
+    // Sets up the sampled tracing: "TraceSampleRate" is the fraction of the states, or batches, that carry a trace
+    protected void openTracing(Map conf) {
+        double rate = conf.containsKey("TraceSampleRate")
+                ? Double.parseDouble(conf.get("TraceSampleRate").toString()) : 0;
+        this.traceEvery = rate > 0 ? Math.max(1, Math.round(1 / rate)) : 0;
+        this.untilTrace = traceEvery;
+    }
+
+    // Time of the ingest stamp, taken before the next state is read; 0 when not tracing
+    protected long ingestTime() {
+        return traceEvery == 0 ? 0 : System.nanoTime();
+    }
+
+    // A trace started at the given ingest time for every traceEvery-th call, otherwise null
+    protected Trace sampleTrace(long ingestTime) {
+        if (traceEvery == 0 || --untilTrace > 0) {
+            return null;
+        }
+        untilTrace = traceEvery;
+        return Trace.start("ingest", ingestTime);
+    }
+
+    // Whether the position of a state is stale: missing, or older than the maximum age at the snapshot time
+    protected boolean isStale(long snapshotTime, double timePosition) {
+        return maxPositionAge >= 0 && (Double.isNaN(timePosition) || snapshotTime - timePosition > maxPositionAge);
+    }
+
+    // Event time of a state: its last contact time, or the snapshot time when it has none
+    protected static long eventTime(long snapshotTime, double lastContact) {
+        return Double.isNaN(lastContact) ? snapshotTime : (long) lastContact;
+    }
+
+    // Records the event time of an emitted state, or Long.MAX_VALUE at the end of the input
+    protected void advanceWatermark(long eventTime) {
+        maxEventTime = Math.max(maxEventTime, eventTime);
+    }
+
+    // Emits the watermark if it has moved since the last one; the watermarks are not anchored, like clock ticks
+    protected void emitWatermark(SpoutOutputCollector collector) {
+        if (!watermarks || maxEventTime == Long.MIN_VALUE) {
+            return;
+        }
+        long watermark = maxEventTime == Long.MAX_VALUE ? Long.MAX_VALUE : maxEventTime - watermarkLag;
+        if (watermark > lastWatermark) {
+            lastWatermark = watermark;
+            collector.emit(WATERMARK_STREAM, new Values(watermark));
+        }
+    }
+
+    /**
+     * Sets up the progress tracking that the recovery of Airline-Sorter relies on, on when "CheckpointDir" is set:
+     * every tuple is emitted with the offset of its first state as message id and kept until it is acked, failed
+     * tuples are emitted again, and every "ProgressIntervalMs" (default 1000) the offset up to which all the states
+     * of this task have been acked goes out on the progress stream. Failed tuples are emitted on the given collector.
+     */
+    protected void openProgress(Map conf, SpoutOutputCollector collector) {
+        this.collector = collector;
+        this.pending = conf.containsKey("CheckpointDir") ? new TreeMap<>() : null;
+        this.progressIntervalMs = conf.containsKey("ProgressIntervalMs")
+                ? Long.parseLong(conf.get("ProgressIntervalMs").toString()) : 1000;
+    }
+
+    // Whether the tuples are emitted with a message id and replayed on failure
+    protected boolean isTracking() {
+        return pending != null;
+    }
+
+    // Emits the tuple of the states from firstOffset to lastOffset, anchored and kept for replay when tracking
+    protected void emitState(SpoutOutputCollector collector, String stream, Values values, long firstOffset,
+                             long lastOffset) {
+        if (pending != null) {
+            pending.put(firstOffset, new Pending(stream, values));
+            this.lastOffset = Math.max(this.lastOffset, lastOffset);
+        }
+        emitTuple(collector, stream, values, pending == null ? null : firstOffset);
+    }
+
+    private static void emitTuple(SpoutOutputCollector collector, String stream, Values values, Object msgId) {
+        if (msgId == null) {
+            if (stream == null) {
+                collector.emit(values);
+            } else {
+                collector.emit(stream, values);
+            }
+        } else if (stream == null) {
+            collector.emit(values, msgId);
+        } else {
+            collector.emit(stream, values, msgId);
+        }
+    }
+
+    /**
+     * Emits the offset up to which every state of this task has been acked, if it has moved and the interval is
+     * up. Once the task is done and nothing is pending it sends Long.MAX_VALUE, so that a finished task does not
+     * hold the progress of the others back. Like the watermarks, the progress is not anchored.
+     */
+    protected void emitProgress(SpoutOutputCollector collector, boolean done) {
+        if (pending == null) {
+            return;
+        }
+        long progress = pending.isEmpty() ? (done ? Long.MAX_VALUE : lastOffset) : pending.firstKey() - 1;
+        long now = System.currentTimeMillis();
+        if (progress > lastProgress && (progress == Long.MAX_VALUE || now - lastProgressTime >= progressIntervalMs)) {
+            lastProgress = progress;
+            lastProgressTime = now;
+            collector.emit(PROGRESS_STREAM, new Values(progress));
+        }
     }
 
     // This method declares the output fields for the Bolt component
@@ -111,58 +334,56 @@ public class FlightsDataReader extends BaseRichSpout {
                 "altitudeGeometric",
                 "transponderCode",
                 "specialPurpose",
-                "origin"));
+                "origin",
+                "offset",
+                "trace"));
+        // In batch mode, runs of states packed into one FlightBatch each
+        declarer.declareStream(FlightBatch.STREAM, new Fields("batch"));
+        // With watermarks on, the event time up to which the states have been emitted
+        declarer.declareStream(WATERMARK_STREAM, new Fields("watermark"));
+        // With progress tracking on, the offset up to which the states of the task have been acked
+        declarer.declareStream(PROGRESS_STREAM, new Fields("ackedThrough"));
     }
 
-    private List<FlightInformation> creatingFlightList() {
-        // Create a JSONParser object
-        JSONParser parser = new JSONParser();
-
-// Create an empty list to store FlightInformation objects
-        List<FlightInformation> fi = new ArrayList<>();
-        try {
-            // Parse the JSON file
-            Object obj = parser.parse(fileReader);
-            // Cast the parsed object to a JSONObject
-            JSONObject jsonObject = (JSONObject) obj;
-            // Extract the "states" array from the JSONObject
-            JSONArray flightList = (JSONArray) jsonObject.get("states");
-            // Iterate over each element in the "states" array
-            for (Object o : flightList) {
-                // Extract the inner JSONArray from the "states" array
-                JSONArray innerArray = (JSONArray) o;
-                // Create a new FlightInformation object using the values from the inner JSONArray
-                FlightInformation flightDetails = new FlightInformation(
-                        String.valueOf(innerArray.get(0)),  // transponder
-                        String.valueOf(innerArray.get(1)),  // call sign
-                        String.valueOf(innerArray.get(2)),  // origin country
-                        String.valueOf(innerArray.get(3)),  // First timestamp
-                        String.valueOf(innerArray.get(4)),  // Last timestamp
-                        String.valueOf(innerArray.get(5)),  // longitude
-                        String.valueOf(innerArray.get(6)),  // latitude
-                        String.valueOf(innerArray.get(7)),  // altitude
-                        String.valueOf(innerArray.get(8)),  // isSurface
-                        String.valueOf(innerArray.get(9)),  // velocity
-                        String.valueOf(innerArray.get(10)), // degree
-                        String.valueOf(innerArray.get(11)), // vertical rate
-                        String.valueOf(innerArray.get(12)), // sensors
-                        String.valueOf(innerArray.get(13)), // altitude[geometric]
-                        String.valueOf(innerArray.get(14)), // transponder code
-                        String.valueOf(innerArray.get(15)), // isSpecialpurpose
-                        String.valueOf(innerArray.get(16))  // origin
-                );
-                // Add the FlightInformation object to the list
-                fi.add(flightDetails);
-            }
-        } catch (Exception e) {
-            // Print the stack trace if an exception occurs
-            e.printStackTrace();
+    // Builds the output tuple for one entry of the "states" array, in the order declared by declareOutputFields()
+    protected static Values toValues(List<?> state, long offset) {
+        Values values = new Values();
+        for (Object field : state) {
+            values.add(String.valueOf(field));
         }
-        // Return the list of FlightInformation objects
-        return fi;
+        values.add(offset);
+        return values;
     }
-}
 
+    /**
+     * Builds the output tuple for the current state of the tokenizer. Only the tuple itself and the field values
+     * that differ from state to state are allocated: literals are shared constants, and the fields that take few
+     * distinct values (country, flags, squawk, position source) are interned.
+     */
+    public static Values toValues(SnapshotTokenizer state, long offset) {
+        Values values = new Values();
+        for (int field = 0; field < 17; field++) {
+            values.add(INTERNED_FIELDS[field] ? state.internedString(field) : state.string(field));
+        }
+        values.add(offset);
+        return values;
+    }
 
+    // Whether the state passes the interest filter, if one is configured: only the callsign and position are read
+    protected boolean accept(List<?> state) {
+        return interestFilter == null || interestFilter.accept(state.get(1), state.get(5), state.get(6));
+    }
 
+    /**
+     * Replay offset of a state: increases across the states of a snapshot and across successive snapshots (as
+     * long as a snapshot holds fewer than 2^24 states), so downstream state can tell a replayed tuple from a new one.
+     */
+    public static long replayOffset(long snapshotTime, long index) {
+        return (snapshotTime << 24) + index;
+    }
 
+    // Snapshot time a replay offset was built from
+    public static long snapshotTime(long offset) {
+        return offset >> 24;
+    }
+}
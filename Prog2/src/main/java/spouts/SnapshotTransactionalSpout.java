@@ -0,0 +1,129 @@
+package spouts;
+
+import backtype.storm.coordination.BatchOutputCollector;
+import backtype.storm.task.TopologyContext;
+import backtype.storm.topology.OutputFieldsDeclarer;
+import backtype.storm.topology.base.BaseTransactionalSpout;
+import backtype.storm.transactional.TransactionAttempt;
+import backtype.storm.tuple.Fields;
+import backtype.storm.tuple.Values;
+import utility.SnapshotTokenizer;
+
+import java.io.File;
+import java.io.FileReader;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Transactional spout for the micro-batch mode: every snapshot file is one batch, and the batch metadata is
+ * simply the index of the snapshot in the sorted list of snapshot files. A replayed transaction therefore
+ * re-reads exactly the same states.
+ * <p>
+ * "FlightsFile" is either a single snapshot, a comma separated list of snapshots, or a directory whose files
+ * are taken in name order; snapshots added to the directory later become new batches. The coordinator holds
+ * the next transaction back until its snapshot exists.
+ */
+public class SnapshotTransactionalSpout extends BaseTransactionalSpout<Integer> {
+
+    @Override
+    public Coordinator<Integer> getCoordinator(Map conf, TopologyContext context) {
+        return new SnapshotCoordinator(conf.get("FlightsFile").toString());
+    }
+
+    @Override
+    public Emitter<Integer> getEmitter(Map conf, TopologyContext context) {
+        return new SnapshotEmitter(conf.get("FlightsFile").toString());
+    }
+
+    @Override
+    public void declareOutputFields(OutputFieldsDeclarer declarer) {
+        // The transaction attempt must be the first field of every batch tuple
+        declarer.declare(new Fields("txid", "callSign", "longitude", "latitude"));
+    }
+
+    // Lists the snapshot files of the configured source, in batch order
+    static List<String> snapshotFiles(String source) {
+        File directory = new File(source);
+        if (!directory.isDirectory()) {
+            return Arrays.asList(source.split(","));
+        }
+        List<String> files = new ArrayList<>();
+        File[] entries = directory.listFiles();
+        if (entries != null) {
+            for (File entry : entries) {
+                if (entry.isFile()) {
+                    files.add(entry.getPath());
+                }
+            }
+        }
+        Collections.sort(files);
+        return files;
+    }
+
+    static class SnapshotCoordinator implements Coordinator<Integer> {
+        private final String source;
+        // Index of the snapshot of the next transaction; until the first transaction after a start, the first
+        // snapshot, as the coordinator does not see the metadata of the earlier ones
+        private int next;
+
+        SnapshotCoordinator(String source) {
+            this.source = source;
+        }
+
+        // A new batch starts only once its snapshot exists
+        @Override
+        public boolean isReady() {
+            return next < snapshotFiles(source).size();
+        }
+
+        @Override
+        public Integer initializeTransaction(BigInteger txid, Integer prevMetadata) {
+            int index = prevMetadata == null ? 0 : prevMetadata + 1;
+            next = index + 1;
+            return index;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    static class SnapshotEmitter implements Emitter<Integer> {
+        private final String source;
+
+        SnapshotEmitter(String source) {
+            this.source = source;
+        }
+
+        @Override
+        public void emitBatch(TransactionAttempt tx, Integer snapshot, BatchOutputCollector collector) {
+            String file = snapshotFiles(source).get(snapshot);
+            // The states are streamed one at a time, so a batch never holds the whole snapshot in memory
+            try (SnapshotTokenizer tokenizer = new SnapshotTokenizer(new FileReader(file))) {
+                while (tokenizer.nextState()) {
+                    if (tokenizer.getFieldCount() < 7) {
+                        continue;
+                    }
+                    collector.emit(new Values(tx,
+                            tokenizer.string(1),  // call sign
+                            tokenizer.string(5),  // longitude
+                            tokenizer.string(6))); // latitude
+                }
+            } catch (Exception e) {
+                throw new RuntimeException("Error reading snapshot [" + file + "]", e);
+            }
+        }
+
+        @Override
+        public void cleanupBefore(BigInteger txid) {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package spouts;
+
+import backtype.storm.spout.SpoutOutputCollector;
+import backtype.storm.task.TopologyContext;
+import backtype.storm.tuple.Values;
+import utility.AckLatencyRecorder;
+import utility.AirportCatalog;
+import utility.FlightBatch;
+import utility.SyntheticFlightGenerator;
+import utility.Trace;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Spout that emits states produced by {@link SyntheticFlightGenerator} instead of reading a snapshot file. It
+ * declares the same output fields as {@link FlightsDataReader}, so it can replace it in any topology.
+ * <p>
+ * Configuration: "SyntheticFlights" is the total number of states, split evenly over the spout tasks,
+ * "SyntheticSeed" the generator seed (default 42), and "AirportsData" the hub list the aircraft cluster around.
+ * With "SyntheticSnapshotStates" set, the states form successive snapshots of that many states (split over the
+ * tasks like the total), "SyntheticSnapshotSeconds" apart (default 10), and the same aircraft come round in every
+ * snapshot. "SyntheticFleet" sets the number of aircraft (split over the tasks), by default the states of a
+ * snapshot; without snapshots every state is a new aircraft unless it is set.
+ * States that are stale or rejected by the interest filter still take their offset, so offsets do not depend on
+ * the filters.
+ * <p>
+ * With "AckLatency" set to true the states are emitted with their offset as message id, and the time from emit
+ * to ack is recorded in the {@link AckLatencyRecorder} of the JVM; failed states are counted, and replayed only
+ * when progress is tracked for recovery, with "CheckpointDir" set (see FlightsDataReader.openProgress()).
+ * With "BatchSize" set, the states go out in FlightBatch tuples like those of {@link FlightsDataReader}.
+ */
+public class SyntheticFlightsReader extends FlightsDataReader {
+    private SpoutOutputCollector collector;
+    private SyntheticFlightGenerator generator;
+    private long remaining;
+    private int tasks;
+    private int index;
+    // States emitted by this task in the current snapshot
+    private long emitted;
+    private long snapshotTime;
+    // Emit time and number of states of each pending tuple by message id, when tracking ack latency
+    private Map<Long, long[]> emitTimes;
+    private int batchSize;
+    private AckLatencyRecorder recorder;
+
+    @Override
+    public void nextTuple() {
+        // Once every state has been emitted, back off instead of spinning. A task whose share was empty from the
+        // start still sends the end of input watermark here, or the windows downstream would wait for it forever;
+        // emitWatermark() sends it only once.
+        if (remaining == 0) {
+            advanceWatermark(Long.MAX_VALUE);
+            emitWatermark(collector);
+            emitProgress(collector, true);
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                // Do nothing if we get interrupted while waiting.
+            }
+            return;
+        }
+        // One state per call, or one batch of states in batch mode
+        FlightBatch batch = batchSize > 0 ? new FlightBatch(batchSize) : null;
+        long firstOffset = -1;
+        do {
+            remaining--;
+            long ingest = ingestTime();
+            List<Object> state = generator.nextState();
+            // The offsets restart with every snapshot, whose time they carry
+            if (generator.getSnapshotTime() != snapshotTime) {
+                snapshotTime = generator.getSnapshotTime();
+                emitted = 0;
+            }
+            // Interleave the offsets of the tasks so that they stay unique across the whole spout
+            long offset = replayOffset(snapshotTime, emitted++ * tasks + index);
+            if (!accept(state) || isStale(generator.getSnapshotTime(), FlightBatch.number(state.get(3)))) {
+                if (recorder != null) {
+                    recorder.skipped();
+                }
+                continue;
+            }
+            long eventTime = eventTime(generator.getSnapshotTime(), FlightBatch.number(state.get(4)));
+            advanceWatermark(eventTime);
+            if (batch == null) {
+                Trace trace = sampleTrace(ingest);
+                Values values = toValues(state, offset);
+                values.add(trace == null ? null : trace.stamp("spout-emit"));
+                emit(null, values, offset, offset, 1);
+                break;
+            }
+            if (firstOffset < 0) {
+                firstOffset = offset;
+                batch.setTrace(sampleTrace(ingest));
+            }
+            batch.add(String.valueOf(state.get(0)), String.valueOf(state.get(1)), String.valueOf(state.get(2)),
+                    FlightBatch.number(state.get(5)), FlightBatch.number(state.get(6)),
+                    FlightBatch.number(state.get(9)), FlightBatch.number(state.get(7)),
+                    FlightBatch.number(state.get(11)), eventTime, offset);
+        } while (remaining > 0 && (batch == null || !batch.isFull()));
+        if (batch != null && batch.size() > 0) {
+            if (batch.getTrace() != null) {
+                batch.setTrace(batch.getTrace().stamp("spout-emit"));
+            }
+            emit(FlightBatch.STREAM, new Values(batch), firstOffset, batch.getOffset(batch.size() - 1), batch.size());
+        }
+        if (remaining == 0) {
+            advanceWatermark(Long.MAX_VALUE);
+        }
+        emitWatermark(collector);
+        emitProgress(collector, remaining == 0);
+    }
+
+    // This task's part of a total split evenly over the tasks
+    private long share(long total) {
+        return total / tasks + (index < total % tasks ? 1 : 0);
+    }
+
+    // Emits the tuple, with the offset of its first state as message id when tracking ack latency or progress
+    private void emit(String stream, Values values, long firstOffset, long lastOffset, int states) {
+        if (recorder != null) {
+            long now = System.nanoTime();
+            emitTimes.put(firstOffset, new long[]{now, states});
+            recorder.emitted(now);
+        }
+        // Progress tracking anchors the tuple itself; otherwise it is anchored here only for the latency
+        if (recorder == null || isTracking()) {
+            emitState(collector, stream, values, firstOffset, lastOffset);
+        } else if (stream == null) {
+            collector.emit(values, firstOffset);
+        } else {
+            collector.emit(stream, values, firstOffset);
+        }
+    }
+
+    @Override
+    public void open(Map conf, TopologyContext context, SpoutOutputCollector collector) {
+        long total = Long.parseLong(conf.get("SyntheticFlights").toString());
+        long seed = conf.containsKey("SyntheticSeed") ? Long.parseLong(conf.get("SyntheticSeed").toString()) : 42L;
+        // Each task generates its own deterministic share of the states, with aircraft interleaved like the offsets
+        this.tasks = context.getComponentTasks(context.getThisComponentId()).size();
+        this.index = context.getComponentTasks(context.getThisComponentId()).indexOf(context.getThisTaskId());
+        this.remaining = share(total);
+        this.generator = new SyntheticFlightGenerator(
+                AirportCatalog.load(conf.get("AirportsData").toString()).getAirports(),
+                seed + index, SyntheticFlightGenerator.DEFAULT_SNAPSHOT_TIME, index, tasks);
+        long fleet = conf.containsKey("SyntheticFleet") ? Long.parseLong(conf.get("SyntheticFleet").toString()) : 0;
+        if (conf.containsKey("SyntheticSnapshotStates")) {
+            long perSnapshot = Long.parseLong(conf.get("SyntheticSnapshotStates").toString());
+            generator.setSnapshots(share(perSnapshot), conf.containsKey("SyntheticSnapshotSeconds")
+                    ? Long.parseLong(conf.get("SyntheticSnapshotSeconds").toString()) : 10);
+            if (fleet == 0) {
+                fleet = perSnapshot;
+            }
+        }
+        generator.setFleet(fleet > 0 ? Math.max(1, share(fleet)) : 0);
+        this.collector = collector;
+        openInterestFilter(conf);
+        this.batchSize = batchSize(conf);
+        openEventTime(conf);
+        openTracing(conf);
+        openProgress(conf, collector);
+        if (Boolean.parseBoolean(String.valueOf(conf.get("AckLatency")))) {
+            this.emitTimes = new HashMap<>();
+            this.recorder = AckLatencyRecorder.getInstance();
+        }
+    }
+
+    @Override
+    public void ack(Object msgId) {
+        super.ack(msgId);
+        long[] emit = emitTimes == null ? null : emitTimes.remove(msgId);
+        if (emit != null) {
+            recorder.acked(emit[0], (int) emit[1]);
+        }
+    }
+
+    @Override
+    public void fail(Object msgId) {
+        if (isTracking()) {
+            // Emitted again: the latency runs on until the replay is acked
+            super.fail(msgId);
+            return;
+        }
+        long[] emit = emitTimes == null ? null : emitTimes.remove(msgId);
+        if (emit != null) {
+            recorder.failed((int) emit[1]);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package utility;
+
+/**
+ * Complete latencies of the tuples acked by the spouts of this JVM, from emit to ack, kept as a
+ * {@link LogHistogram} in microseconds. Used by the benchmarks, which run the topology in a LocalCluster and read
+ * the recorder of the same JVM.
+ */
+public class AckLatencyRecorder {
+    private static final AckLatencyRecorder INSTANCE = new AckLatencyRecorder();
+
+    private LogHistogram latencies;
+    private long failed;
+    private long skipped;
+    private long firstEmit;
+    private long lastAck;
+
+    private AckLatencyRecorder() {
+        reset();
+    }
+
+    public static AckLatencyRecorder getInstance() {
+        return INSTANCE;
+    }
+
+    public synchronized void reset() {
+        latencies = new LogHistogram(1, 600_000_000);
+        failed = 0;
+        skipped = 0;
+        firstEmit = 0;
+        lastAck = 0;
+    }
+
+    public synchronized void emitted(long emitNanos) {
+        if (firstEmit == 0) {
+            firstEmit = emitNanos;
+        }
+    }
+
+    // The given number of states, emitted together, were acked
+    public synchronized void acked(long emitNanos, int states) {
+        lastAck = System.nanoTime();
+        latencies.add((lastAck - emitNanos) / 1000.0, states);
+    }
+
+    public synchronized void failed(int states) {
+        failed += states;
+    }
+
+    // A state the spout dropped without emitting it, e.g. through the interest filter
+    public synchronized void skipped() {
+        skipped++;
+    }
+
+    public synchronized long getAcked() {
+        return latencies.getCount();
+    }
+
+    public synchronized long getFailed() {
+        return failed;
+    }
+
+    public synchronized long getSkipped() {
+        return skipped;
+    }
+
+    // Tuples acked per second, from the first emit to the last ack
+    public synchronized double getThroughput() {
+        return lastAck > firstEmit ? latencies.getCount() * 1e9 / (lastAck - firstEmit) : 0;
+    }
+
+    // Complete latency in milliseconds below which the given fraction of the acked tuples lie
+    public synchronized double getLatencyMillis(double fraction) {
+        return latencies.quantile(fraction) / 1000;
+    }
+}
@@ -0,0 +1,277 @@
+package utility;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Loads the airport list used to identify hubs. Two layouts are understood:
+ * <ul>
+ * <li>airports.txt: one {@code city,code,latitude,longitude[,country[,region]]} line per airport, blank lines
+ * ignored</li>
+ * <li>airports_org.txt: blocks of {@code Key: value} lines (Airport, City, Country, Region, IATA, Latitude,
+ * Longitude, ...) separated by blank lines</li>
+ * </ul>
+ * Airports without a country or region get {@link AirportInformation#UNKNOWN}.
+ * Rows that cannot be used are skipped and reported with their line number. After a successful parse the table
+ * is written to a binary cache next to the source ({@code <file>.bin}); later loads of an unchanged source map the
+ * cache instead of parsing the text again.
+ */
+public class AirportCatalog {
+    private static final int CACHE_MAGIC = 0x41505254; // "APRT"
+    private static final int CACHE_VERSION = 2;
+
+    private final List<AirportInformation> airports;
+    private final List<String> errors;
+    private final boolean fromCache;
+
+    private AirportCatalog(List<AirportInformation> airports, List<String> errors, boolean fromCache) {
+        this.airports = Collections.unmodifiableList(airports);
+        this.errors = Collections.unmodifiableList(errors);
+        this.fromCache = fromCache;
+    }
+
+    public List<AirportInformation> getAirports() {
+        return airports;
+    }
+
+    // One message per rejected row, "line <n>: <reason>"
+    public List<String> getErrors() {
+        return errors;
+    }
+
+    public boolean isFromCache() {
+        return fromCache;
+    }
+
+    // Loads the catalog, using the binary cache when it is up to date; bad rows are reported on System.err
+    public static AirportCatalog load(String fileName) {
+        File source = new File(fileName);
+        File cache = new File(fileName + ".bin");
+        try {
+            List<AirportInformation> cached = readCache(cache, source);
+            if (cached != null) {
+                return new AirportCatalog(cached, new ArrayList<String>(), true);
+            }
+            AirportCatalog catalog = parse(source);
+            for (String error : catalog.getErrors()) {
+                System.err.println("Airports file [" + fileName + "] " + error);
+            }
+            if (catalog.getAirports().isEmpty()) {
+                throw new RuntimeException("No valid airports in [" + fileName + "]");
+            }
+            writeCache(cache, source, catalog.getAirports());
+            return catalog;
+        } catch (IOException e) {
+            throw new RuntimeException("Error reading file [" + fileName + "]", e);
+        }
+    }
+
+    // Parses the text layout, without touching the cache
+    public static AirportCatalog parse(File source) throws IOException {
+        List<AirportInformation> airports = new ArrayList<>();
+        List<String> errors = new ArrayList<>();
+        Set<String> codes = new HashSet<>();
+        try (BufferedReader br = new BufferedReader(new FileReader(source))) {
+            String str;
+            int lineNumber = 0;
+            // Fields of the key/value block being read, and the line it started on
+            String[] block = null;
+            int blockLine = 0;
+            while ((str = br.readLine()) != null) {
+                lineNumber++;
+                String line = str.trim();
+                if (line.isEmpty()) {
+                    if (block != null) {
+                        addBlock(block, blockLine, airports, errors, codes);
+                        block = null;
+                    }
+                    continue;
+                }
+                int colon = line.indexOf(':');
+                // A "Key: value" line starts (or continues) a block; anything else is a comma separated row
+                if (block != null || colon > 0 && isKey(line.substring(0, colon))) {
+                    if (colon < 0) {
+                        errors.add("line " + lineNumber + ": expected 'Key: value' but found '" + line + "'");
+                        continue;
+                    }
+                    String key = line.substring(0, colon).trim();
+                    // An "Airport:" line always opens a new entry, even when the blank separator line is missing
+                    if (block != null && key.equalsIgnoreCase("Airport")) {
+                        addBlock(block, blockLine, airports, errors, codes);
+                        block = null;
+                    }
+                    if (block == null) {
+                        block = new String[6];
+                        blockLine = lineNumber;
+                    }
+                    String value = line.substring(colon + 1).trim();
+                    if (key.equalsIgnoreCase("City")) {
+                        block[0] = value;
+                    } else if (key.equalsIgnoreCase("IATA")) {
+                        block[1] = value;
+                    } else if (key.equalsIgnoreCase("Latitude")) {
+                        block[2] = value;
+                    } else if (key.equalsIgnoreCase("Longitude")) {
+                        block[3] = value;
+                    } else if (key.equalsIgnoreCase("Country")) {
+                        block[4] = value;
+                    } else if (key.equalsIgnoreCase("Region")) {
+                        block[5] = value;
+                    }
+                    continue;
+                }
+                String[] airportDetails = line.split(",");
+                if (airportDetails.length < 4 || airportDetails.length > 6) {
+                    errors.add("line " + lineNumber + ": expected city,code,latitude,longitude[,country[,region]] but found '"
+                            + line + "'");
+                    continue;
+                }
+                add(airportDetails, lineNumber, airports, errors, codes);
+            }
+            if (block != null) {
+                addBlock(block, blockLine, airports, errors, codes);
+            }
+        }
+        return new AirportCatalog(airports, errors, false);
+    }
+
+    private static boolean isKey(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (!Character.isLetterOrDigit(c) && c != ' ') {
+                return false;
+            }
+        }
+        return Character.isLetter(text.charAt(0));
+    }
+
+    private static void addBlock(String[] block, int lineNumber, List<AirportInformation> airports,
+                                 List<String> errors, Set<String> codes) {
+        String[] names = {"City", "IATA", "Latitude", "Longitude"};
+        for (int i = 0; i < names.length; i++) {
+            if (block[i] == null) {
+                errors.add("line " + lineNumber + ": airport entry without " + names[i]);
+                return;
+            }
+        }
+        add(block, lineNumber, airports, errors, codes);
+    }
+
+    private static void add(String[] airportDetails, int lineNumber, List<AirportInformation> airports,
+                            List<String> errors, Set<String> codes) {
+        String city = airportDetails[0].trim();
+        String code = airportDetails[1].trim();
+        if (city.isEmpty() || code.isEmpty()) {
+            errors.add("line " + lineNumber + ": empty city or airport code");
+            return;
+        }
+        double latitude;
+        double longitude;
+        try {
+            latitude = Double.parseDouble(airportDetails[2].trim());
+            longitude = Double.parseDouble(airportDetails[3].trim());
+        } catch (NumberFormatException e) {
+            errors.add("line " + lineNumber + ": invalid coordinates for " + code + ": " + e.getMessage());
+            return;
+        }
+        if (Math.abs(latitude) > 90 || Math.abs(longitude) > 180) {
+            errors.add("line " + lineNumber + ": coordinates out of range for " + code);
+            return;
+        }
+        if (!codes.add(code)) {
+            errors.add("line " + lineNumber + ": duplicate airport code " + code);
+            return;
+        }
+        airports.add(new AirportInformation(city, code, latitude, longitude,
+                optional(airportDetails, 4), optional(airportDetails, 5)));
+    }
+
+    private static String optional(String[] airportDetails, int index) {
+        String value = index < airportDetails.length && airportDetails[index] != null ? airportDetails[index].trim() : "";
+        return value.isEmpty() ? AirportInformation.UNKNOWN : value;
+    }
+
+    // Returns the cached table, or null when there is no cache or it does not match the source
+    private static List<AirportInformation> readCache(File cache, File source) throws IOException {
+        if (!cache.isFile()) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(cache.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < 28 || buffer.getInt() != CACHE_MAGIC || buffer.getInt() != CACHE_VERSION
+                    || buffer.getLong() != source.length() || buffer.getLong() != source.lastModified()) {
+                return null;
+            }
+            int count = buffer.getInt();
+            List<AirportInformation> airports = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                String city = readString(buffer);
+                String code = readString(buffer);
+                double latitude = buffer.getDouble();
+                double longitude = buffer.getDouble();
+                airports.add(new AirportInformation(city, code, latitude, longitude,
+                        readString(buffer), readString(buffer)));
+            }
+            return airports;
+        } catch (RuntimeException e) {
+            // A truncated or otherwise damaged cache is simply rebuilt
+            return null;
+        }
+    }
+
+    // Writes the cache through a temporary file; a cache that cannot be written only costs a re-parse next time
+    private static void writeCache(File cache, File source, List<AirportInformation> airports) {
+        File temp = new File(cache.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(CACHE_MAGIC);
+            out.writeInt(CACHE_VERSION);
+            out.writeLong(source.length());
+            out.writeLong(source.lastModified());
+            out.writeInt(airports.size());
+            for (AirportInformation airport : airports) {
+                writeString(out, airport.getAirportCity());
+                writeString(out, airport.getAirportCode());
+                out.writeDouble(airport.getLatitude());
+                out.writeDouble(airport.getLongitude());
+                writeString(out, airport.getCountry());
+                writeString(out, airport.getRegion());
+            }
+        } catch (IOException e) {
+            temp.delete();
+            return;
+        }
+        if (!temp.renameTo(cache)) {
+            cache.delete();
+            if (!temp.renameTo(cache)) {
+                temp.delete();
+            }
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,97 @@
+package utility;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The airports a flight position is matched against. A flight is near an airport when both its longitude and
+ * latitude differences, scaled to rough per-degree distances, are within the match distance.
+ * <p>
+ * Airports are bucketed into a grid of one degree cells, each cell holding every airport whose match area
+ * overlaps it, so a lookup only checks the few airports of one cell instead of the whole list. An index is
+ * immutable once built and can be shared between threads.
+ */
+public class AirportIndex implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final int LONGITUDE_CHANGE_PER_DEGREE = 45;
+    private static final int LATITUDE_CHANGE_PER_DEGREE = 70;
+    private static final int MATCH_DISTANCE = 20;
+    private static final int LATITUDE_CELLS = 180;
+    private static final int LONGITUDE_CELLS = 360;
+    private static final AirportInformation[] NO_AIRPORTS = new AirportInformation[0];
+
+    private final List<AirportInformation> airports;
+    // Airports per grid cell, indexed by cell(latitude, longitude); null for cells without airports
+    private final AirportInformation[][] cells;
+
+    public AirportIndex(List<AirportInformation> airports) {
+        this.airports = new ArrayList<>(airports);
+        this.cells = new AirportInformation[LATITUDE_CELLS * LONGITUDE_CELLS][];
+        // Slightly widened so that rounding never leaves a position of the match area outside the cells
+        double latitudeReach = (double) MATCH_DISTANCE / LATITUDE_CHANGE_PER_DEGREE + 1e-9;
+        double longitudeReach = (double) MATCH_DISTANCE / LONGITUDE_CHANGE_PER_DEGREE + 1e-9;
+        for (AirportInformation airport : this.airports) {
+            int fromLatitude = latitudeCell(airport.getLatitude() - latitudeReach);
+            int toLatitude = latitudeCell(airport.getLatitude() + latitudeReach);
+            int fromLongitude = longitudeCell(airport.getLongitude() - longitudeReach);
+            int toLongitude = longitudeCell(airport.getLongitude() + longitudeReach);
+            for (int latitude = fromLatitude; latitude <= toLatitude; latitude++) {
+                for (int longitude = fromLongitude; longitude <= toLongitude; longitude++) {
+                    int cell = latitude * LONGITUDE_CELLS + longitude;
+                    AirportInformation[] current = cells[cell] == null ? NO_AIRPORTS : cells[cell];
+                    AirportInformation[] extended = new AirportInformation[current.length + 1];
+                    System.arraycopy(current, 0, extended, 0, current.length);
+                    extended[current.length] = airport;
+                    cells[cell] = extended;
+                }
+            }
+        }
+    }
+
+    public List<AirportInformation> getAirports() {
+        return airports;
+    }
+
+    // Returns the airports near the given position
+    public List<AirportInformation> match(double latitude, double longitude) {
+        if (Double.isNaN(latitude) || Double.isNaN(longitude)) {
+            return Collections.emptyList();
+        }
+        AirportInformation[] candidates = cells[latitudeCell(latitude) * LONGITUDE_CELLS + longitudeCell(longitude)];
+        if (candidates == null) {
+            return Collections.emptyList();
+        }
+        List<AirportInformation> matches = null;
+        for (AirportInformation information : candidates) {
+            if (isNear(information, latitude, longitude)) {
+                if (matches == null) {
+                    matches = new ArrayList<>(2);
+                }
+                matches.add(information);
+            }
+        }
+        return matches == null ? Collections.<AirportInformation>emptyList() : matches;
+    }
+
+    // Whether the position lies in a grid cell that overlaps the match area of any airport
+    public boolean covers(double latitude, double longitude) {
+        return !Double.isNaN(latitude) && !Double.isNaN(longitude)
+                && cells[latitudeCell(latitude) * LONGITUDE_CELLS + longitudeCell(longitude)] != null;
+    }
+
+    static boolean isNear(AirportInformation information, double latitude, double longitude) {
+        double longitudeCheck = Math.abs((longitude - information.getLongitude()) * LONGITUDE_CHANGE_PER_DEGREE);
+        double latitudeCheck = Math.abs((latitude - information.getLatitude()) * LATITUDE_CHANGE_PER_DEGREE);
+        return longitudeCheck <= MATCH_DISTANCE && latitudeCheck <= MATCH_DISTANCE;
+    }
+
+    private static int latitudeCell(double latitude) {
+        return Math.max(0, Math.min(LATITUDE_CELLS - 1, (int) Math.floor(latitude + 90)));
+    }
+
+    private static int longitudeCell(double longitude) {
+        return Math.max(0, Math.min(LONGITUDE_CELLS - 1, (int) Math.floor(longitude + 180)));
+    }
+}
@@ -3,11 +3,15 @@ package utility;
 import java.io.Serializable;
 
 public class AirportInformation implements Serializable {
-    private static final long serialVersionUID = 1L;
+    private static final long serialVersionUID = 2L;
+    // Country and region of airports listed without them
+    public static final String UNKNOWN = "Unknown";
     private String airportCity;
     private String airportCode;
     private double latitude;
     private double longitude;
+    private String country = UNKNOWN;
+    private String region = UNKNOWN;
 
     public AirportInformation(String airportCity, String airportCode, double latitude, double longitude) {
         this.airportCity = airportCity;
@@ -16,6 +20,13 @@ public class AirportInformation implements Serializable {
         this.longitude = longitude;
     }
 
+    public AirportInformation(String airportCity, String airportCode, double latitude, double longitude,
+                              String country, String region) {
+        this(airportCity, airportCode, latitude, longitude);
+        this.country = country;
+        this.region = region;
+    }
+
     public AirportInformation() {
     }
 
@@ -51,6 +62,22 @@ public class AirportInformation implements Serializable {
         this.longitude = longitude;
     }
 
+    public String getCountry() {
+        return country;
+    }
+
+    public void setCountry(String country) {
+        this.country = country;
+    }
+
+    public String getRegion() {
+        return region;
+    }
+
+    public void setRegion(String region) {
+        this.region = region;
+    }
+
     @Override
     public String toString() {
         return "AirportInformation{" +
@@ -58,6 +85,8 @@ public class AirportInformation implements Serializable {
                 ", airportCode='" + airportCode + '\'' +
                 ", latitude=" + latitude +
                 ", longitude=" + longitude +
+                ", country='" + country + '\'' +
+                ", region='" + region + '\'' +
                 '}';
     }
 }
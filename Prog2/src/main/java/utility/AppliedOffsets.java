@@ -0,0 +1,63 @@
+package utility;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Spout replay offsets of the updates an Airline-Sorter task has applied, so that a state emitted again, after a
+ * failure or a restart, is not counted twice, whatever order the states arrive in. Every offset up to the floor
+ * is applied: the spouts report the offset up to which all their states have been acked. Above the floor, the
+ * airports each offset was applied to are kept one by one, until the floor passes them. The floor never passes the
+ * highest offset applied, so that the states of a later input, with higher offsets, are counted.
+ */
+public class AppliedOffsets {
+    private long floor = -1;
+    private long highest = -1;
+    private final TreeMap<Long, Set<String>> above = new TreeMap<>();
+
+    public boolean contains(String airport, long offset) {
+        if (offset <= floor) {
+            return true;
+        }
+        Set<String> airports = above.get(offset);
+        return airports != null && airports.contains(airport);
+    }
+
+    public void add(String airport, long offset) {
+        if (offset > floor) {
+            above.computeIfAbsent(offset, k -> new HashSet<>(2)).add(airport);
+            highest = Math.max(highest, offset);
+        }
+    }
+
+    // Moves the floor up to the given offset, at most the highest applied, and forgets the offsets below it; false
+    // if it does not move
+    public boolean advance(long offset) {
+        offset = Math.min(offset, highest);
+        if (offset <= floor) {
+            return false;
+        }
+        floor = offset;
+        above.headMap(offset, true).clear();
+        return true;
+    }
+
+    // Restores the floor of a checkpoint, below which everything was applied
+    public void setFloor(long floor) {
+        this.floor = floor;
+        this.highest = Math.max(highest, floor);
+        above.headMap(floor, true).clear();
+    }
+
+    public long getFloor() {
+        return floor;
+    }
+
+    // The airports of each applied offset above the floor
+    public Map<Long, Set<String>> getAbove() {
+        return Collections.unmodifiableMap(above);
+    }
+}
@@ -0,0 +1,216 @@
+package utility;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * {@link ResultSink} that hands records to a background thread, which formats them and writes them in large
+ * buffered chunks. The calling bolt only pays for an enqueue; it blocks only when the queue is full.
+ * <p>
+ * When writing to a file, the output continues in {@code <file>.1}, {@code <file>.2}, ... once a file reaches
+ * the rotation size (0 disables rotation). All the tasks of a JVM that write to standard output share one sink, so
+ * that their lines never interleave.
+ */
+public class AsyncResultSink implements ResultSink {
+    private static final int QUEUE_CAPACITY = 1 << 16;
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final ResultRecord END = new ResultRecord("end");
+
+    private final BlockingQueue<ResultRecord> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final ResultFormat format;
+    private final File file;
+    private final long rotateBytes;
+    private final Thread writerThread;
+    private Writer writer;
+    private long written;
+    private int rotation;
+    private volatile IOException failure;
+
+    // The standard output sink of the JVM and the number of tasks holding it open
+    private static AsyncResultSink stdout;
+    private static int stdoutUsers;
+
+    // Sink writing to the given file, rotating it every rotateBytes bytes
+    public AsyncResultSink(ResultFormat format, File file, long rotateBytes) {
+        this(format, file, rotateBytes, null);
+    }
+
+    // Sink writing to the given stream, typically System.out; the stream is flushed but not closed
+    public AsyncResultSink(ResultFormat format, OutputStream out) {
+        this(format, null, 0, out);
+    }
+
+    private AsyncResultSink(ResultFormat format, File file, long rotateBytes, OutputStream out) {
+        this.format = format;
+        this.file = file;
+        this.rotateBytes = rotateBytes;
+        try {
+            this.writer = out != null ? new OutputStreamWriter(out, StandardCharsets.UTF_8) : open(file);
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to open results file [" + file + "]", e);
+        }
+        this.writerThread = new Thread(this::drain, "result-sink-" + (file == null ? "stdout" : file.getName()));
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    /**
+     * Creates the sink configured for a component: "ResultsDir" selects file output (one file per name, default
+     * is standard output, shared by the tasks of the JVM), "ResultsFormat" the format (text, csv or jsonl,
+     * default text), and "ResultsRotateBytes" the rotation size.
+     */
+    public static ResultSink create(Map conf, String name) {
+        ResultFormat format = conf.containsKey("ResultsFormat")
+                ? ResultFormat.parse(conf.get("ResultsFormat").toString()) : ResultFormat.TEXT;
+        if (!conf.containsKey("ResultsDir")) {
+            return openStdout(format);
+        }
+        File directory = new File(conf.get("ResultsDir").toString());
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new RuntimeException("Unable to create results directory [" + directory + "]");
+        }
+        long rotateBytes = conf.containsKey("ResultsRotateBytes")
+                ? Long.parseLong(conf.get("ResultsRotateBytes").toString()) : 0;
+        return new AsyncResultSink(format, new File(directory, name + format.getExtension()), rotateBytes);
+    }
+
+    // A handle on the standard output sink of the JVM, which the last handle to close flushes and closes
+    private static synchronized ResultSink openStdout(ResultFormat format) {
+        if (stdout == null) {
+            stdout = new AsyncResultSink(format, System.out);
+        }
+        stdoutUsers++;
+        AsyncResultSink shared = stdout;
+        return new ResultSink() {
+            private boolean closed;
+
+            @Override
+            public void write(ResultRecord record) {
+                shared.write(record);
+            }
+
+            @Override
+            public void close() {
+                if (!closed) {
+                    closed = true;
+                    closeStdout();
+                }
+            }
+        };
+    }
+
+    private static synchronized void closeStdout() {
+        if (--stdoutUsers == 0) {
+            AsyncResultSink shared = stdout;
+            stdout = null;
+            shared.close();
+        }
+    }
+
+    @Override
+    public void write(ResultRecord record) {
+        try {
+            queue.put(record);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while writing a result", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        write(END);
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure != null) {
+            throw new RuntimeException("Error writing results", failure);
+        }
+    }
+
+    // Body of the writer thread: formats whatever is queued and writes it in one go
+    private void drain() {
+        List<ResultRecord> batch = new ArrayList<>(1024);
+        StringBuilder text = new StringBuilder(BUFFER_SIZE);
+        ResultRecord previous = null;
+        try {
+            while (true) {
+                batch.add(queue.take());
+                queue.drainTo(batch, 4095);
+                for (ResultRecord record : batch) {
+                    if (record == END) {
+                        write(text);
+                        closeWriter();
+                        return;
+                    }
+                    format.format(record, previous, text);
+                    previous = record;
+                    if (text.length() >= BUFFER_SIZE || (rotateBytes > 0 && written + text.length() >= rotateBytes)) {
+                        write(text);
+                    }
+                }
+                batch.clear();
+                // Nothing else is waiting: make what we have visible
+                if (queue.isEmpty()) {
+                    write(text);
+                    writer.flush();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            failure = e;
+            // Keep consuming until closed, so that writers never block on a dead sink; the end marker may already
+            // be among the records taken, otherwise it is still to come and must not be discarded
+            try {
+                if (!batch.contains(END)) {
+                    while (queue.take() != END) {
+                        // Drop the records of the dead sink one by one
+                    }
+                }
+            } catch (InterruptedException interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void write(StringBuilder text) throws IOException {
+        if (text.length() == 0) {
+            return;
+        }
+        writer.append(text);
+        written += text.length();
+        text.setLength(0);
+        // Files stay within the rotation size, give or take the last record
+        if (file != null && rotateBytes > 0 && written >= rotateBytes) {
+            writer.close();
+            rotation++;
+            writer = open(new File(file.getPath() + "." + rotation));
+            written = 0;
+        }
+    }
+
+    private void closeWriter() throws IOException {
+        if (file != null) {
+            writer.close();
+        } else {
+            writer.flush();
+        }
+    }
+
+    private static Writer open(File file) throws IOException {
+        return new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8);
+    }
+}
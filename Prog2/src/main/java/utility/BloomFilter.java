@@ -0,0 +1,57 @@
+package utility;
+
+import java.io.Serializable;
+
+/**
+ * Bloom filter over long keys: a membership test that can answer "maybe" for a key that was never added, at the
+ * configured false positive rate, but never "no" for a key that was.
+ */
+public class BloomFilter implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final long[] bits;
+    private final int size;
+    private final int hashes;
+
+    public BloomFilter(int expectedKeys, double falsePositiveRate) {
+        int n = Math.max(1, expectedKeys);
+        // Optimal number of bits and hash functions for n keys at the given rate
+        long m = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        this.size = (int) Math.max(64, Math.min(Integer.MAX_VALUE - 63, m));
+        this.bits = new long[(size + 63) >>> 6];
+        this.hashes = Math.max(1, (int) Math.round((double) size / n * Math.log(2)));
+    }
+
+    public void add(long key) {
+        long hash = mix(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashes; i++) {
+            int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % size;
+            bits[bit >>> 6] |= 1L << bit;
+        }
+    }
+
+    public boolean mightContain(long key) {
+        long hash = mix(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashes; i++) {
+            int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % size;
+            if ((bits[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // 64 bit finalizer of MurmurHash3, spreading every key bit over the whole hash
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+}
@@ -0,0 +1,158 @@
+package utility;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Tells airline flights apart from the other callsigns found in the feed, and extracts their carrier.
+ * <p>
+ * A callsign is an airline flight when it is an ICAO designator followed by a flight number ("AAL1288") and the
+ * designator is in the airline table; registrations ("N136LM", "GEZUB") and anything else (empty, numeric,
+ * unknown prefixes) have no carrier. Resolutions are kept in a bounded LRU cache, since the same callsigns come
+ * back snapshot after snapshot. The cache is guarded by a lock, so that the bolts created anew for every batch
+ * can share one resolver per worker through {@link #shared(Map)}.
+ */
+public class CallsignResolver {
+    private static final String DEFAULT_TABLE = "/icao_airlines.txt";
+    private static final Pattern AIRLINE = Pattern.compile("[A-Z]{3}[0-9][0-9A-Z]{0,4}");
+    // US N-numbers, and the hyphen-less registrations of the other common nationality prefixes
+    private static final Pattern REGISTRATION = Pattern.compile(
+            "N[1-9][0-9]{0,4}[A-HJ-NP-Z]{0,2}|(C|D|F|G|I|M|EC|EI|HB|LN|OE|OH|OO|OY|PH|SE|VH|ZK|ZS)[A-Z]{3,4}");
+
+    public enum Kind { AIRLINE, REGISTRATION, UNKNOWN }
+
+    // Resolvers handed out by shared(), by table and cache size
+    private static final Map<String, CallsignResolver> SHARED = new ConcurrentHashMap<>();
+
+    private final Set<String> designators;
+    private final Map<String, Resolution> cache;
+
+    // designators may be null, in which case any callsign of the airline shape is taken as an airline flight
+    public CallsignResolver(Set<String> designators, int cacheSize) {
+        this.designators = designators;
+        this.cache = new LinkedHashMap<String, Resolution>(Math.min(cacheSize, 1 << 16), 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Resolution> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /**
+     * Creates the resolver configured for a topology: "AirlinesData" is the designator table (default: the
+     * bundled icao_airlines.txt, "none" for shape-only classification) and "CallsignCacheSize" the cache size.
+     */
+    public static CallsignResolver fromConfig(Map conf) {
+        int cacheSize = conf.containsKey("CallsignCacheSize")
+                ? Integer.parseInt(conf.get("CallsignCacheSize").toString()) : 10000;
+        Object table = conf.get("AirlinesData");
+        if ("none".equals(table)) {
+            return new CallsignResolver(null, cacheSize);
+        }
+        try {
+            return new CallsignResolver(table == null ? readDesignators(DEFAULT_TABLE)
+                    : readDesignators(new FileReader(table.toString())), cacheSize);
+        } catch (IOException e) {
+            throw new RuntimeException("Error reading file [" + (table == null ? DEFAULT_TABLE : table) + "]", e);
+        }
+    }
+
+    // Returns the resolver configured for the topology, created once per worker and configuration
+    public static CallsignResolver shared(Map conf) {
+        return SHARED.computeIfAbsent(conf.get("AirlinesData") + "|" + conf.get("CallsignCacheSize"),
+                key -> fromConfig(conf));
+    }
+
+    // Returns the carrier of an airline callsign, or null for anything else
+    public String carrier(String callSign) {
+        return resolve(callSign).getCarrier();
+    }
+
+    public Resolution resolve(String callSign) {
+        if (callSign == null) {
+            return Resolution.UNKNOWN;
+        }
+        Resolution resolution;
+        synchronized (cache) {
+            resolution = cache.get(callSign);
+        }
+        if (resolution == null) {
+            resolution = classify(callSign.trim());
+            synchronized (cache) {
+                cache.put(callSign, resolution);
+            }
+        }
+        return resolution;
+    }
+
+    private Resolution classify(String callSign) {
+        if (AIRLINE.matcher(callSign).matches()) {
+            String designator = callSign.substring(0, 3);
+            if (designators == null || designators.contains(designator)) {
+                return new Resolution(Kind.AIRLINE, designator.intern());
+            }
+        }
+        if (REGISTRATION.matcher(callSign).matches()) {
+            return Resolution.REGISTRATION;
+        }
+        return Resolution.UNKNOWN;
+    }
+
+    static Set<String> readDesignators(String resource) throws IOException {
+        InputStream in = CallsignResolver.class.getResourceAsStream(resource);
+        if (in == null) {
+            throw new IOException("Resource not found on the classpath");
+        }
+        return readDesignators(new InputStreamReader(in, StandardCharsets.UTF_8));
+    }
+
+    // Reads "designator,name" lines; blank lines and lines starting with # are ignored
+    static Set<String> readDesignators(Reader reader) throws IOException {
+        Set<String> designators = new HashSet<>();
+        try (BufferedReader br = new BufferedReader(reader)) {
+            String str;
+            while ((str = br.readLine()) != null) {
+                String line = str.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                int comma = line.indexOf(',');
+                designators.add((comma < 0 ? line : line.substring(0, comma)).trim().toUpperCase());
+            }
+        }
+        return designators;
+    }
+
+    public static class Resolution {
+        static final Resolution REGISTRATION = new Resolution(Kind.REGISTRATION, null);
+        static final Resolution UNKNOWN = new Resolution(Kind.UNKNOWN, null);
+
+        private final Kind kind;
+        private final String carrier;
+
+        private Resolution(Kind kind, String carrier) {
+            this.kind = kind;
+            this.carrier = carrier;
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        // ICAO designator of the airline, null unless the kind is AIRLINE
+        public String getCarrier() {
+            return carrier;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package utility;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory materialized view of the carrier counts per airport, shared by the tasks of a worker.
+ * <p>
+ * Writers publish an immutable, already sorted snapshot per airport; readers only ever dereference the latest
+ * snapshot, so queries never block or slow down the bolts that keep the view up to date. Every publication gets
+ * a new version number, which lets pollers tell whether anything changed.
+ */
+public class CarrierCountView {
+    private static final CarrierCountView INSTANCE = new CarrierCountView();
+
+    private final Map<String, AirportSnapshot> snapshots = new ConcurrentHashMap<>();
+    private final AtomicLong version = new AtomicLong();
+
+    public static CarrierCountView getInstance() {
+        return INSTANCE;
+    }
+
+    // Replaces the snapshot of one airport with a copy of the given counts
+    public void publish(String airport, Map<String, Integer> counts) {
+        List<Map.Entry<String, Integer>> carriers = new ArrayList<>(counts.size());
+        int total = 0;
+        for (Map.Entry<String, Integer> carrier : counts.entrySet()) {
+            carriers.add(new AbstractMap.SimpleImmutableEntry<>(carrier.getKey(), carrier.getValue()));
+            total += carrier.getValue();
+        }
+        carriers.sort((o1, o2) -> (o2.getValue()).compareTo(o1.getValue()));
+        snapshots.put(airport, new AirportSnapshot(airport, Collections.unmodifiableList(carriers), total,
+                version.incrementAndGet()));
+    }
+
+    public long getVersion() {
+        return version.get();
+    }
+
+    // Latest snapshot of every airport, in no particular order
+    public List<AirportSnapshot> airports() {
+        return new ArrayList<>(snapshots.values());
+    }
+
+    // Latest snapshot of an airport, looked up by its key ("JFK(New York)") or its code ("JFK"); null if unknown
+    public AirportSnapshot airport(String airport) {
+        AirportSnapshot snapshot = snapshots.get(airport);
+        if (snapshot == null) {
+            for (AirportSnapshot candidate : snapshots.values()) {
+                if (candidate.getAirport().startsWith(airport + "(")) {
+                    return candidate;
+                }
+            }
+        }
+        return snapshot;
+    }
+
+    public static class AirportSnapshot {
+        private final String airport;
+        private final List<Map.Entry<String, Integer>> carriers;
+        private final int total;
+        private final long version;
+
+        private AirportSnapshot(String airport, List<Map.Entry<String, Integer>> carriers, int total, long version) {
+            this.airport = airport;
+            this.carriers = carriers;
+            this.total = total;
+            this.version = version;
+        }
+
+        public String getAirport() {
+            return airport;
+        }
+
+        // Carriers with their counts, busiest first
+        public List<Map.Entry<String, Integer>> getCarriers() {
+            return carriers;
+        }
+
+        public List<Map.Entry<String, Integer>> top(int n) {
+            return carriers.subList(0, Math.min(n, carriers.size()));
+        }
+
+        public int getTotal() {
+            return total;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package utility;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Local file store for the per-airport carrier counters of AirlineSorter.
+ * <p>
+ * Every applied update is appended to a log ({@code <name>.log}); every so often the whole counter state is
+ * written to a compacted checkpoint ({@code <name>.ckpt}) and the log is truncated. Each checkpoint has a
+ * generation number, which the log started after it repeats in its header, so that a log already folded into
+ * the checkpoint (a crash between the two) is recognised and not replayed. Together with the counters, the store
+ * keeps the {@link AppliedOffsets}: the log records the spout replay offset of every update and each move of the
+ * acked floor after the updates it covers, so that a restarted task skips exactly the tuples it has already counted.
+ */
+public class CounterCheckpointStore implements Closeable {
+    private static final int CHECKPOINT_VERSION = 3;
+    // Log record types: an applied update, and a move of the applied offsets floor
+    private static final byte UPDATE = 0;
+    private static final byte FLOOR = 1;
+
+    private final File checkpointFile;
+    private final File logFile;
+    private DataOutputStream log;
+    private long generation;
+
+    public CounterCheckpointStore(File directory, String name) {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new RuntimeException("Unable to create checkpoint directory [" + directory + "]");
+        }
+        this.checkpointFile = new File(directory, name + ".ckpt");
+        this.logFile = new File(directory, name + ".log");
+    }
+
+    // Loads the last checkpoint and replays the log on top of it; returns the number of log records replayed.
+    // Must be called once before any append().
+    public long restore(Map<String, Map<String, Integer>> counters, AppliedOffsets appliedOffsets)
+            throws IOException {
+        if (checkpointFile.exists()) {
+            try (DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(checkpointFile), 1 << 16))) {
+                int version = in.readInt();
+                if (version != CHECKPOINT_VERSION) {
+                    throw new IOException("Unsupported checkpoint version " + version + " in [" + checkpointFile
+                            + "]");
+                }
+                generation = in.readLong();
+                int airports = in.readInt();
+                for (int i = 0; i < airports; i++) {
+                    String airport = in.readUTF();
+                    int carriers = in.readInt();
+                    Map<String, Integer> counts = new HashMap<>(carriers * 2);
+                    for (int j = 0; j < carriers; j++) {
+                        counts.put(in.readUTF(), in.readInt());
+                    }
+                    counters.put(airport, counts);
+                }
+                appliedOffsets.setFloor(in.readLong());
+                int offsets = in.readInt();
+                for (int i = 0; i < offsets; i++) {
+                    long offset = in.readLong();
+                    int applied = in.readInt();
+                    for (int j = 0; j < applied; j++) {
+                        appliedOffsets.add(in.readUTF(), offset);
+                    }
+                }
+            }
+        }
+        long replayed = 0;
+        if (logFile.exists()) {
+            try (DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(logFile), 1 << 16))) {
+                // A log of an earlier generation is already part of the checkpoint (crash between the
+                // checkpoint and the log reset); an empty one has nothing to replay
+                long logGeneration;
+                try {
+                    logGeneration = in.readLong();
+                } catch (EOFException e) {
+                    logGeneration = -1;
+                }
+                while (logGeneration == generation) {
+                    byte type;
+                    String airport = null;
+                    String carrier = null;
+                    long offset;
+                    try {
+                        type = in.readByte();
+                        if (type == UPDATE) {
+                            airport = in.readUTF();
+                            carrier = in.readUTF();
+                        }
+                        offset = in.readLong();
+                    } catch (EOFException e) {
+                        // End of the log, or a record torn by the crash
+                        break;
+                    }
+                    if (type == FLOOR) {
+                        appliedOffsets.advance(offset);
+                        continue;
+                    }
+                    Map<String, Integer> counts = counters.computeIfAbsent(airport, k -> new HashMap<>());
+                    counts.put(carrier, counts.getOrDefault(carrier, 0) + 1);
+                    appliedOffsets.add(airport, offset);
+                    replayed++;
+                }
+            }
+        }
+        // Fold the replayed log into a fresh checkpoint so the next restart starts from a compact state
+        checkpoint(counters, appliedOffsets);
+        return replayed;
+    }
+
+    // Appends one applied update to the log; the record reaches the file on the next flush()
+    public void append(String airport, String carrier, long offset) throws IOException {
+        log.writeByte(UPDATE);
+        log.writeUTF(airport);
+        log.writeUTF(carrier);
+        log.writeLong(offset);
+    }
+
+    // Appends a move of the applied offsets floor, which must follow the updates it covers
+    public void appendFloor(long floor) throws IOException {
+        log.writeByte(FLOOR);
+        log.writeLong(floor);
+    }
+
+    public void flush() throws IOException {
+        log.flush();
+    }
+
+    // Writes a compacted checkpoint of the full state and starts a new, empty log
+    public void checkpoint(Map<String, Map<String, Integer>> counters, AppliedOffsets appliedOffsets)
+            throws IOException {
+        if (log != null) {
+            log.close();
+        }
+        File temp = new File(checkpointFile.getPath() + ".tmp");
+        try (FileOutputStream file = new FileOutputStream(temp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 1 << 16))) {
+            out.writeInt(CHECKPOINT_VERSION);
+            out.writeLong(generation + 1);
+            out.writeInt(counters.size());
+            for (Map.Entry<String, Map<String, Integer>> airport : counters.entrySet()) {
+                out.writeUTF(airport.getKey());
+                out.writeInt(airport.getValue().size());
+                for (Map.Entry<String, Integer> carrier : airport.getValue().entrySet()) {
+                    out.writeUTF(carrier.getKey());
+                    out.writeInt(carrier.getValue());
+                }
+            }
+            out.writeLong(appliedOffsets.getFloor());
+            out.writeInt(appliedOffsets.getAbove().size());
+            for (Map.Entry<Long, Set<String>> offset : appliedOffsets.getAbove().entrySet()) {
+                out.writeLong(offset.getKey());
+                out.writeInt(offset.getValue().size());
+                for (String airport : offset.getValue()) {
+                    out.writeUTF(airport);
+                }
+            }
+            out.flush();
+            file.getFD().sync();
+        }
+        // The rename is atomic, so a crash leaves either the old or the new checkpoint, never a partial one
+        if (!temp.renameTo(checkpointFile)) {
+            checkpointFile.delete();
+            if (!temp.renameTo(checkpointFile)) {
+                throw new IOException("Unable to replace checkpoint [" + checkpointFile + "]");
+            }
+        }
+        generation++;
+        log = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(logFile, false), 1 << 16));
+        log.writeLong(generation);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (log != null) {
+            log.close();
+            log = null;
+        }
+    }
+}
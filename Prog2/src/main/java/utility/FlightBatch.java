@@ -0,0 +1,127 @@
+package utility;
+
+import java.io.Serializable;
+
+/**
+ * A run of consecutive states packed into parallel arrays, sent by the spouts as a single tuple on the "batch"
+ * stream when "BatchSize" is set. It carries only the fields the bolts use; numbers are kept as doubles, NaN
+ * standing for a missing value.
+ */
+public class FlightBatch implements Serializable {
+    private static final long serialVersionUID = 3L;
+    public static final String STREAM = "batch";
+
+    private String[] transponderAddresses;
+    private String[] callSigns;
+    private String[] originCountries;
+    private double[] longitudes;
+    private double[] latitudes;
+    private double[] velocities;
+    private double[] altitudes;
+    private double[] verticalRates;
+    private long[] eventTimes;
+    private long[] offsets;
+    private int size;
+    // Stage timestamps when the batch is sampled for tracing, otherwise null
+    private Trace trace;
+
+    // For the serializer
+    public FlightBatch() {
+        this(0);
+    }
+
+    public FlightBatch(int capacity) {
+        this.transponderAddresses = new String[capacity];
+        this.callSigns = new String[capacity];
+        this.originCountries = new String[capacity];
+        this.longitudes = new double[capacity];
+        this.latitudes = new double[capacity];
+        this.velocities = new double[capacity];
+        this.altitudes = new double[capacity];
+        this.verticalRates = new double[capacity];
+        this.eventTimes = new long[capacity];
+        this.offsets = new long[capacity];
+    }
+
+    public void add(String transponderAddress, String callSign, String originCountry, double longitude,
+                    double latitude, double velocity, double altitude, double verticalRate, long eventTime,
+                    long offset) {
+        transponderAddresses[size] = transponderAddress;
+        callSigns[size] = callSign;
+        originCountries[size] = originCountry;
+        longitudes[size] = longitude;
+        latitudes[size] = latitude;
+        velocities[size] = velocity;
+        altitudes[size] = altitude;
+        verticalRates[size] = verticalRate;
+        eventTimes[size] = eventTime;
+        offsets[size] = offset;
+        size++;
+    }
+
+    public boolean isFull() {
+        return size == offsets.length;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public String getTransponderAddress(int i) {
+        return transponderAddresses[i];
+    }
+
+    public String getCallSign(int i) {
+        return callSigns[i];
+    }
+
+    public String getOriginCountry(int i) {
+        return originCountries[i];
+    }
+
+    public double getLongitude(int i) {
+        return longitudes[i];
+    }
+
+    public double getLatitude(int i) {
+        return latitudes[i];
+    }
+
+    public double getVelocity(int i) {
+        return velocities[i];
+    }
+
+    public double getAltitude(int i) {
+        return altitudes[i];
+    }
+
+    public double getVerticalRate(int i) {
+        return verticalRates[i];
+    }
+
+    public long getEventTime(int i) {
+        return eventTimes[i];
+    }
+
+    public long getOffset(int i) {
+        return offsets[i];
+    }
+
+    public Trace getTrace() {
+        return trace;
+    }
+
+    public void setTrace(Trace trace) {
+        this.trace = trace;
+    }
+
+    // A number field as the per-state tuples carry it: "null" when missing
+    public static String text(double value) {
+        return Double.isNaN(value) ? "null" : String.valueOf(value);
+    }
+
+    // Numeric value of a state field as generated or parsed (a Number, or null), NaN when missing
+    public static double number(Object value) {
+        return value instanceof Number ? ((Number) value).doubleValue() : Double.NaN;
+    }
+}
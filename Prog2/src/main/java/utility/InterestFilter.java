@@ -0,0 +1,91 @@
+package utility;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Cheap test the spouts run on the callsign and position of a state, before decoding anything else, to drop the
+ * states the report can never use: carriers that are not tracked, and positions outside the area covered by the
+ * hubs. Tracked carriers are held in a {@link BloomFilter} keyed by the three designator characters; the hub
+ * coverage is the cell grid of the current {@link AirportIndex}, so it follows reloads of the airports file.
+ * <p>
+ * Both checks only ever let too much through (Bloom false positives, whole grid cells), never too little: the
+ * exact checks still happen in the bolts.
+ */
+public class InterestFilter {
+    private final BloomFilter carriers;
+    private final ReloadingAirportIndex airports;
+
+    public InterestFilter(Set<String> carriers, double falsePositiveRate, ReloadingAirportIndex airports) {
+        this.carriers = new BloomFilter(carriers.size(), falsePositiveRate);
+        for (String carrier : carriers) {
+            if (carrier.length() == 3) {
+                this.carriers.add(carrierKey(carrier));
+            }
+        }
+        this.airports = airports;
+    }
+
+    /**
+     * Creates the filter configured for a topology, or returns null when "InterestFilter" is not enabled.
+     * "InterestCarriers" lists the tracked designators (default: the whole airline table) and
+     * "InterestFalsePositiveRate" sets the Bloom filter rate (default 0.01).
+     */
+    public static InterestFilter fromConfig(Map conf) {
+        if (!Boolean.parseBoolean(String.valueOf(conf.get("InterestFilter")))) {
+            return null;
+        }
+        Set<String> carriers;
+        if (conf.containsKey("InterestCarriers")) {
+            carriers = new HashSet<>();
+            for (String carrier : conf.get("InterestCarriers").toString().split(",")) {
+                carriers.add(carrier.trim().toUpperCase());
+            }
+        } else {
+            try {
+                carriers = conf.containsKey("AirlinesData") && !"none".equals(conf.get("AirlinesData"))
+                        ? CallsignResolver.readDesignators(new FileReader(conf.get("AirlinesData").toString()))
+                        : CallsignResolver.readDesignators("/icao_airlines.txt");
+            } catch (IOException e) {
+                throw new RuntimeException("Error reading the airline table for the interest filter", e);
+            }
+        }
+        double falsePositiveRate = conf.containsKey("InterestFalsePositiveRate")
+                ? Double.parseDouble(conf.get("InterestFalsePositiveRate").toString()) : 0.01;
+        long reloadMs = conf.containsKey("AirportsReloadMs") ? Long.parseLong(conf.get("AirportsReloadMs").toString()) : 0;
+        return new InterestFilter(carriers, falsePositiveRate,
+                ReloadingAirportIndex.forFile(conf.get("AirportsData").toString(), reloadMs));
+    }
+
+    // Whether the state may matter, given its raw callsign and position values (any of which may be null)
+    public boolean accept(Object callSign, Object longitude, Object latitude) {
+        if (!(callSign instanceof String) || !(longitude instanceof Number) || !(latitude instanceof Number)) {
+            return false;
+        }
+        return accept((String) callSign, ((Number) longitude).doubleValue(), ((Number) latitude).doubleValue());
+    }
+
+    // Same test on a callsign that has not been turned into a String; a missing position is NaN
+    public boolean accept(CharSequence callSign, double longitude, double latitude) {
+        int start = 0;
+        while (start < callSign.length() && callSign.charAt(start) == ' ') {
+            start++;
+        }
+        if (callSign.length() - start < 3 || !carriers.mightContain(carrierKey(callSign, start))) {
+            return false;
+        }
+        return airports.get().covers(latitude, longitude);
+    }
+
+    private static long carrierKey(CharSequence text) {
+        return carrierKey(text, 0);
+    }
+
+    // The three designator characters packed into one key, so no substring has to be allocated
+    private static long carrierKey(CharSequence text, int start) {
+        return ((long) text.charAt(start) << 32) | ((long) text.charAt(start + 1) << 16) | text.charAt(start + 2);
+    }
+}
@@ -0,0 +1,152 @@
+package utility;
+
+import java.io.Serializable;
+
+/**
+ * Fixed-size histogram with log-linear buckets, in the manner of HdrHistogram: values are counted in steps of
+ * the given resolution, exactly below 2^SUB_BUCKET_BITS steps and with a relative error of at most
+ * 1 / 2^SUB_BUCKET_BITS (about 3%) above. Memory depends only on the value range, not on the number of values,
+ * and two histograms with the same range can be merged by adding their buckets, so partial histograms kept by
+ * parallel tasks or successive windows combine into the same quantiles a single histogram would give.
+ * <p>
+ * Values beyond the range are counted in the outermost bucket; min and max are tracked exactly.
+ */
+public class LogHistogram implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private final double resolution;
+    private final double maxValue;
+    private final long[] positive;
+    // Buckets of the negative values by magnitude, allocated on the first negative value
+    private long[] negative;
+    private long count;
+    private double sum;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    public LogHistogram(double resolution, double maxValue) {
+        this.resolution = resolution;
+        this.maxValue = maxValue;
+        this.positive = new long[bucketIndex(steps(maxValue)) + 1];
+    }
+
+    public void add(double value) {
+        add(value, 1);
+    }
+
+    // Adds the value the given number of times
+    public void add(double value, long times) {
+        if (Double.isNaN(value) || times <= 0) {
+            return;
+        }
+        if (value < 0) {
+            if (negative == null) {
+                negative = new long[positive.length];
+            }
+            negative[bucket(-value)] += times;
+        } else {
+            positive[bucket(value)] += times;
+        }
+        count += times;
+        sum += value * times;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    // Adds the values of another histogram with the same resolution and range
+    public void merge(LogHistogram other) {
+        if (other.resolution != resolution || other.maxValue != maxValue) {
+            throw new IllegalArgumentException("Histograms with different ranges cannot be merged");
+        }
+        for (int i = 0; i < positive.length; i++) {
+            positive[i] += other.positive[i];
+        }
+        if (other.negative != null) {
+            if (negative == null) {
+                negative = new long[positive.length];
+            }
+            for (int i = 0; i < negative.length; i++) {
+                negative[i] += other.negative[i];
+            }
+        }
+        count += other.count;
+        sum += other.sum;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    // Value below which the given fraction of the values lie, within the bucket precision
+    public double quantile(double fraction) {
+        if (count == 0) {
+            return Double.NaN;
+        }
+        long rank = Math.max(1, (long) Math.ceil(fraction * count));
+        long seen = 0;
+        if (negative != null) {
+            // The most negative values come first
+            for (int i = negative.length - 1; i >= 0; i--) {
+                seen += negative[i];
+                if (seen >= rank) {
+                    return clamp(-bucketValue(i));
+                }
+            }
+        }
+        for (int i = 0; i < positive.length; i++) {
+            seen += positive[i];
+            if (seen >= rank) {
+                return clamp(bucketValue(i));
+            }
+        }
+        return max;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getMin() {
+        return count == 0 ? Double.NaN : min;
+    }
+
+    public double getMax() {
+        return count == 0 ? Double.NaN : max;
+    }
+
+    public double getMean() {
+        return count == 0 ? Double.NaN : sum / count;
+    }
+
+    private int bucket(double magnitude) {
+        return Math.min(positive.length - 1, bucketIndex(steps(magnitude)));
+    }
+
+    private long steps(double magnitude) {
+        return (long) Math.min(Long.MAX_VALUE >> 1, Math.floor(magnitude / resolution));
+    }
+
+    // Exact buckets for the first SUB_BUCKETS steps, then SUB_BUCKETS buckets per power of two
+    private static int bucketIndex(long steps) {
+        if (steps < SUB_BUCKETS) {
+            return (int) steps;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(steps);
+        int shift = exponent - SUB_BUCKET_BITS;
+        return SUB_BUCKETS + shift * SUB_BUCKETS + (int) ((steps >>> shift) - SUB_BUCKETS);
+    }
+
+    // Middle of the bucket, as a magnitude
+    private double bucketValue(int index) {
+        if (index < SUB_BUCKETS) {
+            return (index + 0.5) * resolution;
+        }
+        int shift = (index - SUB_BUCKETS) / SUB_BUCKETS;
+        long lowest = (long) (SUB_BUCKETS + (index - SUB_BUCKETS) % SUB_BUCKETS) << shift;
+        return (lowest + (1L << shift) / 2.0) * resolution;
+    }
+
+    private double clamp(double value) {
+        return Math.max(min, Math.min(max, value));
+    }
+}
@@ -0,0 +1,79 @@
+package utility;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Holds the current {@link AirportIndex} of an airports file and, when a poll interval is given, rebuilds it in
+ * the background whenever the file changes. The new index is built completely before it is published through a
+ * volatile reference, so readers never block and never see a half built table; a file that fails to load
+ * leaves the previous index in place.
+ * <p>
+ * One instance (and at most one watcher thread) exists per airports file and worker.
+ */
+public class ReloadingAirportIndex {
+    private static final Map<String, ReloadingAirportIndex> INSTANCES = new ConcurrentHashMap<>();
+
+    private final File file;
+    private volatile AirportIndex index;
+    private long loadedLength;
+    private long loadedModified;
+    private Thread watcher;
+
+    private ReloadingAirportIndex(String fileName) {
+        this.file = new File(fileName);
+        this.loadedLength = file.length();
+        this.loadedModified = file.lastModified();
+        this.index = new AirportIndex(AirportCatalog.load(fileName).getAirports());
+    }
+
+    // Returns the index of the file, starting its watcher when pollMs is positive and none runs yet
+    public static ReloadingAirportIndex forFile(String fileName, long pollMs) {
+        ReloadingAirportIndex airports = INSTANCES.computeIfAbsent(fileName, ReloadingAirportIndex::new);
+        if (pollMs > 0) {
+            airports.watch(pollMs);
+        }
+        return airports;
+    }
+
+    public AirportIndex get() {
+        return index;
+    }
+
+    private synchronized void watch(long pollMs) {
+        if (watcher != null) {
+            return;
+        }
+        watcher = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    Thread.sleep(pollMs);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                reloadIfChanged();
+            }
+        }, "airports-watcher-" + file.getName());
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    // Rebuilds and swaps in the index when the file size or modification time changed
+    void reloadIfChanged() {
+        long length = file.length();
+        long modified = file.lastModified();
+        if (length == loadedLength && modified == loadedModified) {
+            return;
+        }
+        try {
+            AirportIndex rebuilt = new AirportIndex(AirportCatalog.load(file.getPath()).getAirports());
+            index = rebuilt;
+            System.out.println("Reloaded " + rebuilt.getAirports().size() + " airports from [" + file + "]");
+        } catch (RuntimeException e) {
+            System.err.println("Keeping the previous airports, reloading [" + file + "] failed: " + e.getMessage());
+        }
+        loadedLength = length;
+        loadedModified = modified;
+    }
+}
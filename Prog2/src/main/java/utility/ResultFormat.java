@@ -0,0 +1,84 @@
+package utility;
+
+import java.util.Map;
+
+/**
+ * Output formats of the result sinks.
+ */
+public enum ResultFormat {
+    // Human readable report, in the layout AirlineSorter has always printed
+    TEXT(".txt") {
+        @Override
+        void format(ResultRecord record, ResultRecord previous, StringBuilder out) {
+            if ("carrier-count".equals(record.getType())) {
+                Object airport = record.get("airport");
+                if (previous == null || !"carrier-count".equals(previous.getType())
+                        || !airport.equals(previous.get("airport"))) {
+                    out.append("At Airport: ").append(airport).append('\n');
+                }
+                out.append(record.get("carrier")).append(':').append(record.get("count")).append('\n');
+            } else if ("airport-total".equals(record.getType())) {
+                out.append("total # flights = ").append(record.get("count")).append("\n\n");
+            } else {
+                out.append(record.getType());
+                for (Map.Entry<String, Object> value : record.getValues().entrySet()) {
+                    out.append(' ').append(value.getKey()).append('=').append(value.getValue());
+                }
+                out.append('\n');
+            }
+        }
+    },
+    // One comma separated row per record, prefixed with the record type
+    CSV(".csv") {
+        @Override
+        void format(ResultRecord record, ResultRecord previous, StringBuilder out) {
+            out.append(record.getType());
+            for (Object value : record.getValues().values()) {
+                out.append(',');
+                String text = String.valueOf(value);
+                if (text.indexOf(',') >= 0 || text.indexOf('"') >= 0) {
+                    out.append('"').append(text.replace("\"", "\"\"")).append('"');
+                } else {
+                    out.append(text);
+                }
+            }
+            out.append('\n');
+        }
+    },
+    // One JSON object per line
+    JSON_LINES(".jsonl") {
+        @Override
+        void format(ResultRecord record, ResultRecord previous, StringBuilder out) {
+            out.append("{\"type\":\"").append(record.getType()).append('"');
+            for (Map.Entry<String, Object> value : record.getValues().entrySet()) {
+                out.append(",\"").append(value.getKey()).append("\":");
+                Object v = value.getValue();
+                if (v == null || v instanceof Number || v instanceof Boolean) {
+                    out.append(v);
+                } else {
+                    out.append('"').append(String.valueOf(v).replace("\\", "\\\\").replace("\"", "\\\"")).append('"');
+                }
+            }
+            out.append("}\n");
+        }
+    };
+
+    private final String extension;
+
+    ResultFormat(String extension) {
+        this.extension = extension;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    // Appends the formatted record; previous is the record written just before it, or null
+    abstract void format(ResultRecord record, ResultRecord previous, StringBuilder out);
+
+    // Accepts "text", "csv", "jsonl" / "json_lines", case insensitive
+    public static ResultFormat parse(String name) {
+        String normalized = name.trim().toUpperCase();
+        return "JSONL".equals(normalized) ? JSON_LINES : valueOf(normalized);
+    }
+}
@@ -0,0 +1,38 @@
+package utility;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * One result written to a {@link ResultSink}: a record type plus named values, kept in insertion order so that
+ * every format writes the columns in the same order.
+ */
+public class ResultRecord {
+    private final String type;
+    private final Map<String, Object> values = new LinkedHashMap<>();
+
+    public ResultRecord(String type) {
+        this.type = type;
+    }
+
+    public static ResultRecord of(String type) {
+        return new ResultRecord(type);
+    }
+
+    public ResultRecord with(String name, Object value) {
+        values.put(name, value);
+        return this;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public Object get(String name) {
+        return values.get(name);
+    }
+
+    public Map<String, Object> getValues() {
+        return values;
+    }
+}
@@ -0,0 +1,14 @@
+package utility;
+
+/**
+ * Destination of the results produced by the bolts. Implementations decide how and when the records are
+ * formatted and written; callers only hand records over.
+ */
+public interface ResultSink extends AutoCloseable {
+
+    void write(ResultRecord record);
+
+    // Writes out everything accepted so far and releases the underlying resources
+    @Override
+    void close();
+}
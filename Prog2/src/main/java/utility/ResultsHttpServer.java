@@ -0,0 +1,132 @@
+package utility;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tiny embedded HTTP server answering queries against the {@link CarrierCountView} of the worker:
+ * <ul>
+ * <li>{@code GET /airports} lists every airport with its total and snapshot version</li>
+ * <li>{@code GET /top?airport=JFK&n=5} returns the busiest carriers of an airport</li>
+ * </ul>
+ * Responses are JSON; an unknown airport answers 404, and an n that is not a non-negative integer 400. At most one
+ * server runs per worker JVM, shared by the tasks that start it; the last of them to stop it shuts it down.
+ */
+public class ResultsHttpServer {
+    private static HttpServer server;
+    // Tasks that have started the server and not stopped it yet
+    private static int users;
+
+    // Starts the server on the given port unless one is already running in this JVM; every start needs a stop()
+    public static synchronized void start(int port, CarrierCountView view) {
+        if (server != null) {
+            users++;
+            return;
+        }
+        try {
+            server = HttpServer.create(new InetSocketAddress(port), 0);
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to start the results server on port " + port, e);
+        }
+        server.createContext("/airports", exchange -> respond(exchange, airports(view)));
+        server.createContext("/top", exchange -> {
+            Map<String, String> query = query(exchange);
+            int n = count(query.get("n"));
+            if (n < 0) {
+                respond(exchange, 400, "{\"error\":\"n must be a non-negative integer\"}");
+            } else {
+                respond(exchange, top(view, query.get("airport"), n));
+            }
+        });
+        server.start();
+        users = 1;
+    }
+
+    // Releases a start(); the last one stops the server, so that the port is freed and the JVM can exit
+    public static synchronized void stop() {
+        if (server != null && --users == 0) {
+            server.stop(0);
+            server = null;
+        }
+    }
+
+    private static String airports(CarrierCountView view) {
+        StringBuilder json = new StringBuilder("{\"version\":").append(view.getVersion()).append(",\"airports\":[");
+        List<CarrierCountView.AirportSnapshot> airports = view.airports();
+        for (int i = 0; i < airports.size(); i++) {
+            CarrierCountView.AirportSnapshot airport = airports.get(i);
+            json.append(i == 0 ? "" : ",").append("{\"airport\":\"").append(escape(airport.getAirport()))
+                    .append("\",\"total\":").append(airport.getTotal())
+                    .append(",\"version\":").append(airport.getVersion()).append('}');
+        }
+        return json.append("]}").toString();
+    }
+
+    // Number of carriers asked for, 10 when not given, -1 when not a non-negative integer
+    private static int count(String n) {
+        if (n == null) {
+            return 10;
+        }
+        try {
+            return Math.max(-1, Integer.parseInt(n));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static String top(CarrierCountView view, String airportKey, int n) {
+        CarrierCountView.AirportSnapshot airport = airportKey == null ? null : view.airport(airportKey);
+        if (airport == null) {
+            return null;
+        }
+        StringBuilder json = new StringBuilder("{\"airport\":\"").append(escape(airport.getAirport()))
+                .append("\",\"total\":").append(airport.getTotal())
+                .append(",\"version\":").append(airport.getVersion()).append(",\"carriers\":[");
+        List<Map.Entry<String, Integer>> carriers = airport.top(n);
+        for (int i = 0; i < carriers.size(); i++) {
+            json.append(i == 0 ? "" : ",").append("{\"carrier\":\"").append(escape(carriers.get(i).getKey()))
+                    .append("\",\"count\":").append(carriers.get(i).getValue()).append('}');
+        }
+        return json.append("]}").toString();
+    }
+
+    private static Map<String, String> query(HttpExchange exchange) throws IOException {
+        Map<String, String> parameters = new HashMap<>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query != null) {
+            for (String parameter : query.split("&")) {
+                String[] pair = parameter.split("=", 2);
+                parameters.put(URLDecoder.decode(pair[0], "UTF-8"),
+                        pair.length > 1 ? URLDecoder.decode(pair[1], "UTF-8") : "");
+            }
+        }
+        return parameters;
+    }
+
+    // Sends the JSON body, or a 404 when there is nothing to return
+    private static void respond(HttpExchange exchange, String body) throws IOException {
+        respond(exchange, body == null ? 404 : 200, body == null ? "{\"error\":\"not found\"}" : body);
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+}
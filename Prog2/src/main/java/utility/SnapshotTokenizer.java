@@ -0,0 +1,459 @@
+package utility;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Streaming reader of the "states" of an OpenSky snapshot, one state at a time, without building the JSON tree.
+ * The fields of the current state are held in one reusable character buffer; a field only becomes a String when
+ * it is asked for, and the values that repeat across states (literals, countries, flags) can be interned so that
+ * asking for them again allocates nothing.
+ * <p>
+ * Nested values, such as the sensors array, are returned as their JSON text without whitespace.
+ */
+public class SnapshotTokenizer implements Closeable {
+    private static final int STRING = 0;
+    private static final int NUMBER = 1;
+    private static final int LITERAL = 2;
+    private static final int NESTED = 3;
+    private static final int INTERNED = 1024;
+    // Bytes at the end of a snapshot file searched for a "time" that follows the states
+    private static final int TAIL = 4096;
+    // Powers of ten that are exact as doubles, for number()
+    private static final double[] POWERS_OF_TEN = new double[23];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private final Reader in;
+    private final char[] buffer = new char[1 << 16];
+    private int position;
+    private int limit;
+    // Character read ahead by a scalar value, or -1
+    private int pushedBack = -1;
+
+    // Text of the fields of the current state, and where each field lies in it
+    private char[] text = new char[512];
+    private int length;
+    private int[] starts = new int[32];
+    private int[] ends = new int[32];
+    private int[] kinds = new int[32];
+    private int fields;
+    private boolean inStates;
+    private boolean finished;
+    // Top level "time" passed on the way to the states, or 0
+    private long time;
+
+    private final String[] interned = new String[INTERNED];
+    private final FieldView view = new FieldView();
+
+    public SnapshotTokenizer(Reader in) {
+        this.in = in;
+    }
+
+    /**
+     * Moves to the states and returns the top level "time" of the snapshot file, or 0 when it has none. A time
+     * before the states is read on the way; one after them, as python's json.tool writes it, is read from the end
+     * of the given file, so the states are still read only once.
+     */
+    public long snapshotTime(File file) throws IOException {
+        enterStates();
+        return time != 0 ? time : trailingTime(file);
+    }
+
+    // Moves to the next state; false once the "states" array is exhausted
+    public boolean nextState() throws IOException {
+        if (!enterStates()) {
+            return false;
+        }
+        int c = nextNonWhitespace();
+        if (c == ',') {
+            c = nextNonWhitespace();
+        }
+        if (c == ']') {
+            finished = true;
+            return false;
+        }
+        if (c != '[') {
+            throw new IOException("Expected a state array but found '" + (char) c + "'");
+        }
+        fields = 0;
+        length = 0;
+        c = nextNonWhitespace();
+        while (c != ']') {
+            readValue(c);
+            c = nextNonWhitespace();
+            if (c == ',') {
+                c = nextNonWhitespace();
+            } else if (c != ']') {
+                throw new IOException("Expected ',' or ']' in a state but found '" + (char) c + "'");
+            }
+        }
+        return true;
+    }
+
+    public int getFieldCount() {
+        return fields;
+    }
+
+    public boolean isNull(int field) {
+        return kinds[field] == LITERAL && ends[field] - starts[field] == 4 && text[starts[field]] == 'n';
+    }
+
+    // The field as the old tree parser turned it into text: "null" for null, the characters of a string
+    public String string(int field) {
+        if (kinds[field] == LITERAL) {
+            return isNull(field) ? "null" : text[starts[field]] == 't' ? "true" : "false";
+        }
+        return new String(text, starts[field], ends[field] - starts[field]);
+    }
+
+    // Like string(), but returns the same instance for the same characters as long as it stays in the table
+    public String internedString(int field) {
+        if (kinds[field] == LITERAL) {
+            return string(field);
+        }
+        int start = starts[field];
+        int end = ends[field];
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + text[i];
+        }
+        int slot = (hash ^ (hash >>> 16)) & (INTERNED - 1);
+        String candidate = interned[slot];
+        if (candidate != null && candidate.length() == end - start) {
+            boolean same = true;
+            for (int i = 0; same && i < candidate.length(); i++) {
+                same = candidate.charAt(i) == text[start + i];
+            }
+            if (same) {
+                return candidate;
+            }
+        }
+        String value = new String(text, start, end - start);
+        interned[slot] = value;
+        return value;
+    }
+
+    // Numeric value of the field, NaN when it is not a number
+    public double number(int field) {
+        if (kinds[field] != NUMBER) {
+            return Double.NaN;
+        }
+        int i = starts[field];
+        int end = ends[field];
+        boolean negative = text[i] == '-';
+        if (negative) {
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int decimals = -1;
+        for (; i < end; i++) {
+            char c = text[i];
+            if (c >= '0' && c <= '9') {
+                mantissa = mantissa * 10 + (c - '0');
+                digits++;
+                if (decimals >= 0) {
+                    decimals++;
+                }
+            } else if (c == '.' && decimals < 0) {
+                decimals = 0;
+            } else {
+                break;
+            }
+        }
+        // Exponents and long mantissas take the exact, allocating route
+        if (i < end || digits > 15 || decimals > 22) {
+            return Double.parseDouble(string(field));
+        }
+        double value = decimals > 0 ? mantissa / POWERS_OF_TEN[decimals] : mantissa;
+        return negative ? -value : value;
+    }
+
+    // View of the characters of the field, valid until the next state; the same object is reused for every call
+    public CharSequence chars(int field) {
+        view.start = starts[field];
+        view.end = ends[field];
+        return view;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    // Moves to the start of the "states" array unless there already; false if there is none or it is exhausted
+    private boolean enterStates() throws IOException {
+        if (!finished && !inStates) {
+            if (seekKey("states") && nextNonWhitespace() == '[') {
+                inStates = true;
+            } else {
+                finished = true;
+            }
+        }
+        return !finished;
+    }
+
+    // Skips the top level object up to the value of the given key, keeping a "time" it passes; false if the key
+    // is not there
+    private boolean seekKey(String key) throws IOException {
+        int c = nextNonWhitespace();
+        if (c != '{') {
+            return false;
+        }
+        while (true) {
+            c = nextNonWhitespace();
+            if (c == '}' || c == -1) {
+                return false;
+            }
+            if (c == ',') {
+                c = nextNonWhitespace();
+            }
+            if (c != '"') {
+                throw new IOException("Expected a key but found '" + (char) c + "'");
+            }
+            // The key is read as the first field, nothing else is in the buffer before the states
+            fields = 0;
+            length = 0;
+            readValue(c);
+            if (nextNonWhitespace() != ':') {
+                throw new IOException("Expected ':' after a key");
+            }
+            if (isKey(key)) {
+                return true;
+            }
+            if (isKey("time")) {
+                fields = 0;
+                length = 0;
+                readValue(nextNonWhitespace());
+                time = kinds[0] == NUMBER ? (long) number(0) : 0;
+            } else {
+                skipValue(nextNonWhitespace());
+            }
+        }
+    }
+
+    private boolean isKey(String key) {
+        if (ends[0] - starts[0] != key.length()) {
+            return false;
+        }
+        for (int i = 0; i < key.length(); i++) {
+            if (text[starts[0] + i] != key.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Value of the last "time" key in the end of the file; keys only appear at the top level of a snapshot
+    private static long trailingTime(File file) throws IOException {
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            byte[] tail = new byte[(int) Math.min(in.length(), TAIL)];
+            in.seek(in.length() - tail.length);
+            in.readFully(tail);
+            String text = new String(tail, StandardCharsets.ISO_8859_1);
+            for (int key = text.lastIndexOf("\"time\""); key >= 0; key = text.lastIndexOf("\"time\"", key - 1)) {
+                int i = key + 6;
+                while (i < text.length() && Character.isWhitespace(text.charAt(i))) {
+                    i++;
+                }
+                // A callsign "time" in a state is followed by a comma, not a colon
+                if (i == text.length() || text.charAt(i) != ':') {
+                    continue;
+                }
+                do {
+                    i++;
+                } while (i < text.length() && Character.isWhitespace(text.charAt(i)));
+                int start = i;
+                while (i < text.length() && Character.isDigit(text.charAt(i))) {
+                    i++;
+                }
+                return i > start ? Long.parseLong(text.substring(start, i)) : 0;
+            }
+            return 0;
+        }
+    }
+
+    private void skipValue(int c) throws IOException {
+        if (c == '"') {
+            while ((c = read()) != '"') {
+                if (c == '\\') {
+                    read();
+                } else if (c == -1) {
+                    throw new IOException("Unterminated string");
+                }
+            }
+        } else if (c == '[' || c == '{') {
+            int depth = 1;
+            while (depth > 0) {
+                c = read();
+                if (c == -1) {
+                    throw new IOException("Unterminated array or object");
+                } else if (c == '"') {
+                    skipValue(c);
+                } else if (c == '[' || c == '{') {
+                    depth++;
+                } else if (c == ']' || c == '}') {
+                    depth--;
+                }
+            }
+        } else {
+            while ((c = read()) != -1 && c != ',' && c != '}' && c != ']' && !Character.isWhitespace(c)) {
+                // Rest of a number or literal
+            }
+            pushedBack = c;
+        }
+    }
+
+    // Appends the value starting with c to the text of the current state as the next field
+    private void readValue(int c) throws IOException {
+        if (fields == starts.length) {
+            starts = Arrays.copyOf(starts, fields * 2);
+            ends = Arrays.copyOf(ends, fields * 2);
+            kinds = Arrays.copyOf(kinds, fields * 2);
+        }
+        starts[fields] = length;
+        if (c == '"') {
+            kinds[fields] = STRING;
+            while ((c = read()) != '"') {
+                if (c == -1) {
+                    throw new IOException("Unterminated string");
+                }
+                if (c == '\\') {
+                    c = unescape(read());
+                }
+                append((char) c);
+            }
+        } else if (c == '[' || c == '{') {
+            kinds[fields] = NESTED;
+            append((char) c);
+            int depth = 1;
+            boolean inString = false;
+            while (depth > 0) {
+                c = read();
+                if (c == -1) {
+                    throw new IOException("Unterminated array or object");
+                }
+                if (inString) {
+                    if (c == '\\') {
+                        append((char) c);
+                        c = read();
+                    } else if (c == '"') {
+                        inString = false;
+                    }
+                } else if (c == '"') {
+                    inString = true;
+                } else if (c == '[' || c == '{') {
+                    depth++;
+                } else if (c == ']' || c == '}') {
+                    depth--;
+                } else if (Character.isWhitespace(c)) {
+                    continue;
+                }
+                append((char) c);
+            }
+        } else if (c == '-' || c >= '0' && c <= '9' || c == 't' || c == 'f' || c == 'n') {
+            kinds[fields] = c == 't' || c == 'f' || c == 'n' ? LITERAL : NUMBER;
+            append((char) c);
+            while ((c = read()) != -1 && c != ',' && c != '}' && c != ']' && !Character.isWhitespace(c)) {
+                append((char) c);
+            }
+            pushedBack = c;
+        } else {
+            throw new IOException("Unexpected character '" + (char) c + "'");
+        }
+        ends[fields] = length;
+        fields++;
+    }
+
+    private int unescape(int c) throws IOException {
+        switch (c) {
+            case 'n':
+                return '\n';
+            case 't':
+                return '\t';
+            case 'r':
+                return '\r';
+            case 'b':
+                return '\b';
+            case 'f':
+                return '\f';
+            case 'u':
+                int value = 0;
+                for (int i = 0; i < 4; i++) {
+                    value = value * 16 + Character.digit(read(), 16);
+                }
+                return value;
+            default:
+                return c;
+        }
+    }
+
+    private void append(char c) {
+        if (length == text.length) {
+            text = Arrays.copyOf(text, length * 2);
+        }
+        text[length++] = c;
+    }
+
+    private int nextNonWhitespace() throws IOException {
+        int c;
+        do {
+            c = read();
+        } while (c != -1 && Character.isWhitespace(c));
+        return c;
+    }
+
+    private int read() throws IOException {
+        if (pushedBack != -1) {
+            int c = pushedBack;
+            pushedBack = -1;
+            return c;
+        }
+        if (position == limit) {
+            limit = in.read(buffer, 0, buffer.length);
+            position = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+        return buffer[position++];
+    }
+
+    // Characters of one field of the current state
+    private class FieldView implements CharSequence {
+        int start;
+        int end;
+
+        @Override
+        public int length() {
+            return end - start;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return text[start + index];
+        }
+
+        @Override
+        public CharSequence subSequence(int from, int to) {
+            return new String(text, start + from, to - from);
+        }
+
+        @Override
+        public String toString() {
+            return new String(text, start, end - start);
+        }
+    }
+}
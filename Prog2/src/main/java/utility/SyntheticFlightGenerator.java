@@ -0,0 +1,248 @@
+package utility;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Serializable;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Deterministic generator of OpenSky-shaped state vectors, used to exercise the topology at sizes well beyond
+ * the bundled flights.txt snapshot. The same seed always yields the same sequence of states.
+ * <p>
+ * Aircraft cluster around the hubs following a Zipf distribution over the airport list (which is ordered by
+ * passenger traffic), carriers follow a Zipf distribution over a fixed table of ICAO designators, and a share
+ * of the states are general-aviation registrations or empty callsigns, as in the real feed.
+ * <p>
+ * By default every state belongs to one snapshot; with {@link #setSnapshots(long, long)} the snapshot time moves
+ * forward after every so many states, giving a sequence of snapshots like consecutive OpenSky downloads.
+ * <p>
+ * By default every state is a new aircraft. With {@link #setFleet(long)} the states cycle through a fleet of that
+ * many aircraft instead, so that the same aircraft reappear in every snapshot. An aircraft keeps its transponder,
+ * callsign and home hub, while whether it is near that hub, and where, changes from state to state.
+ */
+public class SyntheticFlightGenerator implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    // ICAO airline designators and their home country, most frequent first
+    private static final String[][] CARRIERS = {
+            {"AAL", "United States"}, {"DAL", "United States"}, {"UAL", "United States"},
+            {"SWA", "United States"}, {"SKW", "United States"}, {"JBU", "United States"},
+            {"ASA", "United States"}, {"RPA", "United States"}, {"ENY", "United States"},
+            {"NKS", "United States"}, {"FFT", "United States"}, {"EDV", "United States"},
+            {"FDX", "United States"}, {"UPS", "United States"}, {"JIA", "United States"},
+            {"ASH", "United States"}, {"AAY", "United States"}, {"HAL", "United States"},
+            {"GJS", "United States"}, {"QXE", "United States"}, {"ACA", "Canada"},
+            {"WJA", "Canada"}, {"AMX", "Mexico"}, {"BAW", "United Kingdom"},
+            {"DLH", "Germany"}, {"AFR", "France"}, {"KLM", "Kingdom of the Netherlands"},
+            {"UAE", "United Arab Emirates"}, {"QTR", "Qatar"}, {"CPA", "China"}
+    };
+    // Snapshot time of the bundled flights.txt, used when no other time is given
+    public static final long DEFAULT_SNAPSHOT_TIME = 1551555579L;
+    private static final String REGISTRATION_LETTERS = "ABCDEFGHJKLMNPQRSTUVWXYZ";
+
+    // Share of aircraft placed around a hub, the rest are spread over the globe
+    private static final double HUB_SHARE = 0.6;
+    // Share of callsigns that are airline flights, registrations, and empty respectively (the rest are null)
+    private static final double AIRLINE_SHARE = 0.80;
+    private static final double REGISTRATION_SHARE = 0.12;
+    private static final double EMPTY_SHARE = 0.05;
+    // Standard deviation, in degrees, of the positions around a hub
+    private static final double HUB_SPREAD = 0.2;
+
+    private final List<AirportInformation> hubs;
+    private final double[] hubCdf;
+    private final double[] carrierCdf;
+    private final Random random;
+    private long snapshotTime;
+    // States per snapshot, 0 for a single snapshot, and seconds between snapshots
+    private long statesPerSnapshot;
+    private long snapshotInterval;
+    private long statesInSnapshot;
+    // Seeds the attributes an aircraft keeps in every state, from its number
+    private final Random identity = new Random();
+    private final long seed;
+    // Aircraft are numbered firstAircraft + i * aircraftStride, so that generators can share the id space
+    private final long firstAircraft;
+    private final long aircraftStride;
+    // Aircraft in the fleet, 0 for a new aircraft in every state, and the position of the next state in it
+    private long fleetSize;
+    private long sequence;
+
+    public SyntheticFlightGenerator(List<AirportInformation> hubs, long seed, long snapshotTime) {
+        this(hubs, seed, snapshotTime, 0, 1);
+    }
+
+    /**
+     * Generator whose aircraft are numbered firstAircraft, firstAircraft + aircraftStride, and so on; generators
+     * with the same stride and different first aircraft below it never share an aircraft.
+     */
+    public SyntheticFlightGenerator(List<AirportInformation> hubs, long seed, long snapshotTime,
+                                    long firstAircraft, long aircraftStride) {
+        if (hubs.isEmpty()) {
+            throw new IllegalArgumentException("At least one hub is required to generate flights");
+        }
+        this.hubs = new ArrayList<>(hubs);
+        this.hubCdf = zipfCdf(hubs.size());
+        this.carrierCdf = zipfCdf(CARRIERS.length);
+        this.random = new Random(seed);
+        this.seed = seed;
+        this.snapshotTime = snapshotTime;
+        this.firstAircraft = firstAircraft;
+        this.aircraftStride = aircraftStride;
+    }
+
+    // Snapshot time of the state last returned by nextState(), or of the next one before the first call
+    public long getSnapshotTime() {
+        return snapshotTime;
+    }
+
+    // Starts a new snapshot, intervalSeconds later, after every statesPerSnapshot states
+    public void setSnapshots(long statesPerSnapshot, long intervalSeconds) {
+        this.statesPerSnapshot = statesPerSnapshot;
+        this.snapshotInterval = intervalSeconds;
+    }
+
+    // Cycles the states through a fleet of the given number of aircraft; 0 for a new aircraft in every state
+    public void setFleet(long aircraft) {
+        this.fleetSize = aircraft;
+    }
+
+    // Returns the next state vector, laid out like one entry of the OpenSky "states" array
+    public List<Object> nextState() {
+        if (statesPerSnapshot > 0 && statesInSnapshot == statesPerSnapshot) {
+            snapshotTime += snapshotInterval;
+            statesInSnapshot = 0;
+        }
+        statesInSnapshot++;
+        long aircraft = firstAircraft + (fleetSize > 0 ? sequence % fleetSize : sequence) * aircraftStride;
+        sequence++;
+        // The callsign, country and home hub are drawn the same way whenever the aircraft comes round again
+        identity.setSeed(seed ^ aircraft * 0x9E3779B97F4A7C15L);
+        String country;
+        String callSign;
+        double callSignDraw = identity.nextDouble();
+        if (callSignDraw < AIRLINE_SHARE) {
+            String[] carrier = CARRIERS[pick(identity, carrierCdf)];
+            country = carrier[1];
+            callSign = pad(carrier[0] + (1 + identity.nextInt(9999)));
+        } else if (callSignDraw < AIRLINE_SHARE + REGISTRATION_SHARE) {
+            country = "United States";
+            callSign = pad("N" + (1 + identity.nextInt(9999))
+                    + REGISTRATION_LETTERS.charAt(identity.nextInt(REGISTRATION_LETTERS.length()))
+                    + REGISTRATION_LETTERS.charAt(identity.nextInt(REGISTRATION_LETTERS.length())));
+        } else if (callSignDraw < AIRLINE_SHARE + REGISTRATION_SHARE + EMPTY_SHARE) {
+            country = "United States";
+            callSign = "";
+        } else {
+            country = "United States";
+            callSign = null;
+        }
+        AirportInformation home = hubs.get(pick(identity, hubCdf));
+
+        double longitude;
+        double latitude;
+        boolean nearHub = random.nextDouble() < HUB_SHARE;
+        if (nearHub) {
+            latitude = home.getLatitude() + random.nextGaussian() * HUB_SPREAD;
+            longitude = home.getLongitude() + random.nextGaussian() * HUB_SPREAD;
+        } else {
+            latitude = -60 + random.nextDouble() * 130;
+            longitude = -180 + random.nextDouble() * 360;
+        }
+        boolean onGround = nearHub && random.nextDouble() < 0.1;
+        double altitude = onGround ? 0 : nearHub ? 300 + random.nextDouble() * 3000 : 9000 + random.nextDouble() * 3000;
+        double velocity = onGround ? random.nextDouble() * 15 : nearHub ? 70 + random.nextDouble() * 90
+                : 200 + random.nextDouble() * 60;
+        double verticalRate = onGround ? 0 : nearHub ? round(random.nextGaussian() * 6) : round(random.nextGaussian());
+        long lastContact = snapshotTime - random.nextInt(15);
+
+        return Arrays.asList(
+                String.format("%06x", (aircraft * 0x9E3779B1L) & 0xFFFFFFL), // transponder, unique below 2^24
+                callSign,
+                country,
+                lastContact - random.nextInt(60),  // First timestamp
+                lastContact,                       // Last timestamp
+                round(longitude),
+                round(latitude),
+                onGround ? null : round(altitude),
+                onGround,
+                round(velocity),
+                round(random.nextDouble() * 360),
+                verticalRate,
+                null,
+                onGround ? null : round(altitude + random.nextGaussian() * 50),
+                String.format("%04d", random.nextInt(7777)),
+                false,
+                0);
+    }
+
+    // Streams a snapshot of the given number of states to the writer, in the same layout as flights.txt
+    public void writeSnapshot(Writer out, long count) throws IOException {
+        out.write("{\n    \"states\": [\n");
+        for (long i = 0; i < count; i++) {
+            List<Object> state = nextState();
+            out.write("        [");
+            for (int f = 0; f < state.size(); f++) {
+                if (f > 0) {
+                    out.write(", ");
+                }
+                Object value = state.get(f);
+                out.write(value instanceof String ? "\"" + value + "\"" : String.valueOf(value));
+            }
+            out.write(i + 1 < count ? "],\n" : "]\n");
+        }
+        out.write("    ],\n    \"time\": " + snapshotTime + "\n}\n");
+    }
+
+    private static int pick(Random random, double[] cdf) {
+        int index = Arrays.binarySearch(cdf, random.nextDouble());
+        return Math.min(index >= 0 ? index : -index - 1, cdf.length - 1);
+    }
+
+    // Cumulative Zipf(1) distribution over n ranks
+    private static double[] zipfCdf(int n) {
+        double[] cdf = new double[n];
+        double total = 0;
+        for (int i = 0; i < n; i++) {
+            total += 1.0 / (i + 1);
+            cdf[i] = total;
+        }
+        for (int i = 0; i < n; i++) {
+            cdf[i] /= total;
+        }
+        return cdf;
+    }
+
+    private static String pad(String callSign) {
+        StringBuilder sb = new StringBuilder(callSign);
+        while (sb.length() < 8) {
+            sb.append(' ');
+        }
+        return sb.toString();
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 10000) / 10000.0;
+    }
+
+    // Usage: SyntheticFlightGenerator <airports file> <output file> <number of states> [seed]
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.err.println("Usage: SyntheticFlightGenerator <airports file> <output file> <number of states> [seed]");
+            System.exit(1);
+        }
+        long count = Long.parseLong(args[2]);
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : 42L;
+        SyntheticFlightGenerator generator = new SyntheticFlightGenerator(
+                AirportCatalog.load(args[0]).getAirports(), seed, DEFAULT_SNAPSHOT_TIME);
+        try (Writer out = new BufferedWriter(new FileWriter(args[1]), 1 << 16)) {
+            generator.writeSnapshot(out, count);
+        }
+        System.out.println("Wrote " + count + " states to " + args[1]);
+    }
+}
@@ -0,0 +1,42 @@
+package utility;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Per-airport carrier counters kept in a {@link TieredMap}, with a budget of carrier counters on the heap.
+ */
+public class TieredCounterMap extends TieredMap<Map<String, Integer>> {
+    // Keeps about budget carrier counters on the heap and spills the rest to the given file
+    public TieredCounterMap(long budget, File file) {
+        super(budget, file);
+    }
+
+    @Override
+    protected long weight(Map<String, Integer> counts) {
+        return counts.size();
+    }
+
+    @Override
+    protected void writeValue(Map<String, Integer> counts, DataOutputStream out) throws IOException {
+        out.writeInt(counts.size());
+        for (Map.Entry<String, Integer> carrier : counts.entrySet()) {
+            out.writeUTF(carrier.getKey());
+            out.writeInt(carrier.getValue());
+        }
+    }
+
+    @Override
+    protected Map<String, Integer> readValue(DataInputStream in) throws IOException {
+        int carriers = in.readInt();
+        Map<String, Integer> counts = new HashMap<>(carriers * 2);
+        for (int i = 0; i < carriers; i++) {
+            counts.put(in.readUTF(), in.readInt());
+        }
+        return counts;
+    }
+}
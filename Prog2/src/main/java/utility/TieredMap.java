@@ -0,0 +1,307 @@
+package utility;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Per-airport state kept in two tiers: the recently used airports on the heap, the others in a spill file. Once
+ * the heap tier holds more than the budget, in the weight() of its values, the least recently used airports are
+ * written to the file and dropped from the heap; getting one of them reads it back. Values are exact in both
+ * tiers. The heap keeps, for each spilled airport, only its key and where its record lies in the file.
+ * <p>
+ * The value returned by get() may be updated in place, like that of a HashMap; the change in weight it causes
+ * is accounted for on the next call. Iterating reads the spilled airports without bringing them back to the
+ * heap, so the entries of spilled airports are copies, and the map must not be changed while it is iterated.
+ * <p>
+ * The spill file only extends the heap and is deleted on close(); durable state is kept by
+ * {@link CounterCheckpointStore}.
+ */
+public abstract class TieredMap<V> extends AbstractMap<String, V> implements Closeable {
+    // Spilled space is reclaimed once it exceeds both this size and the live part of the file
+    private static final long MIN_COMPACTION_BYTES = 1 << 20;
+
+    private final long budget;
+    private final LinkedHashMap<String, V> hot = new LinkedHashMap<>(16, 0.75f, true);
+    // Position and length of the record of each spilled airport
+    private final Map<String, long[]> cold = new HashMap<>();
+    private final File file;
+    private RandomAccessFile spill;
+    private long end;
+    private long garbage;
+    private long hotWeight;
+    // Airport handed out by the last call, with its weight then, so that later updates to it can be accounted for
+    private String touchedKey;
+    private long touchedWeight;
+    private long demotions;
+    private long promotions;
+
+    // Keeps values of about budget weight on the heap and spills the rest to the given file
+    protected TieredMap(long budget, File file) {
+        this.budget = budget;
+        this.file = file;
+        File directory = file.getAbsoluteFile().getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new RuntimeException("Unable to create spill directory [" + directory + "]");
+        }
+    }
+
+    @Override
+    public V get(Object key) {
+        settle();
+        V value = hot.get(key);
+        if (value == null) {
+            long[] location = cold.remove(key);
+            if (location == null) {
+                return null;
+            }
+            value = read(location);
+            garbage += location[1];
+            hot.put((String) key, value);
+            hotWeight += weight(value);
+            promotions++;
+        }
+        touch((String) key, value);
+        return value;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return hot.containsKey(key) || cold.containsKey(key);
+    }
+
+    @Override
+    public V put(String key, V value) {
+        settle();
+        V previous = remove(key);
+        hot.put(key, value);
+        hotWeight += weight(value);
+        touch(key, value);
+        return previous;
+    }
+
+    @Override
+    public V remove(Object key) {
+        settle();
+        V previous = hot.remove(key);
+        if (previous != null) {
+            hotWeight -= weight(previous);
+            return previous;
+        }
+        long[] location = cold.remove(key);
+        if (location == null) {
+            return null;
+        }
+        garbage += location[1];
+        return read(location);
+    }
+
+    @Override
+    public int size() {
+        return hot.size() + cold.size();
+    }
+
+    @Override
+    public void clear() {
+        hot.clear();
+        cold.clear();
+        hotWeight = 0;
+        touchedKey = null;
+        garbage = end;
+        compact();
+    }
+
+    @Override
+    public Set<Entry<String, V>> entrySet() {
+        return new AbstractSet<Entry<String, V>>() {
+            @Override
+            public Iterator<Entry<String, V>> iterator() {
+                settle();
+                // Hot entries first, then the spilled ones, read one at a time
+                final Iterator<Entry<String, V>> hotEntries =
+                        new ArrayList<>(hot.entrySet()).iterator();
+                final Iterator<Entry<String, long[]>> coldEntries = new ArrayList<>(cold.entrySet()).iterator();
+                return new Iterator<Entry<String, V>>() {
+                    @Override
+                    public boolean hasNext() {
+                        return hotEntries.hasNext() || coldEntries.hasNext();
+                    }
+
+                    @Override
+                    public Entry<String, V> next() {
+                        if (hotEntries.hasNext()) {
+                            return hotEntries.next();
+                        }
+                        if (!coldEntries.hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        Entry<String, long[]> entry = coldEntries.next();
+                        return new SimpleImmutableEntry<>(entry.getKey(), read(entry.getValue()));
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return TieredMap.this.size();
+            }
+        };
+    }
+
+    public int getHotSize() {
+        return hot.size();
+    }
+
+    public int getColdSize() {
+        return cold.size();
+    }
+
+    public long getDemotions() {
+        return demotions;
+    }
+
+    public long getPromotions() {
+        return promotions;
+    }
+
+    @Override
+    public void close() {
+        try {
+            if (spill != null) {
+                spill.close();
+                spill = null;
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Error closing spill file [" + file + "]", e);
+        }
+        file.delete();
+    }
+
+    private void touch(String key, V value) {
+        touchedKey = key;
+        touchedWeight = weight(value);
+    }
+
+    // Accounts for updates made to the last airport handed out, then demotes airports until within the budget
+    private void settle() {
+        if (touchedKey != null) {
+            V value = hot.get(touchedKey);
+            if (value != null) {
+                hotWeight += weight(value) - touchedWeight;
+            }
+            touchedKey = null;
+        }
+        Iterator<Entry<String, V>> eldest = hot.entrySet().iterator();
+        while (hotWeight > budget && hot.size() > 1) {
+            Entry<String, V> entry = eldest.next();
+            cold.put(entry.getKey(), write(entry.getValue()));
+            hotWeight -= weight(entry.getValue());
+            eldest.remove();
+            demotions++;
+        }
+        if (garbage > MIN_COMPACTION_BYTES && garbage > end - garbage) {
+            compact();
+        }
+    }
+
+    // Weight of a value against the budget
+    protected abstract long weight(V value);
+
+    protected abstract void writeValue(V value, DataOutputStream out) throws IOException;
+
+    protected abstract V readValue(DataInputStream in) throws IOException;
+
+    private long[] write(V value) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+            DataOutputStream out = new DataOutputStream(bytes);
+            writeValue(value, out);
+            out.flush();
+            long[] location = {end, bytes.size()};
+            ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+            while (buffer.hasRemaining()) {
+                channel().write(buffer, end + buffer.position());
+            }
+            end += bytes.size();
+            return location;
+        } catch (IOException e) {
+            throw new RuntimeException("Error writing spill file [" + file + "]", e);
+        }
+    }
+
+    private V read(long[] location) {
+        try {
+            ByteBuffer buffer = readRecord(location);
+            return readValue(new DataInputStream(new ByteArrayInputStream(buffer.array())));
+        } catch (IOException e) {
+            throw new RuntimeException("Error reading spill file [" + file + "]", e);
+        }
+    }
+
+    // Rewrites the live records at the start of the file and cuts off the rest
+    private void compact() {
+        if (spill == null) {
+            return;
+        }
+        List<Entry<String, long[]>> live = new ArrayList<>(cold.entrySet());
+        // In file order, every record moves towards the start and never over a record not yet moved
+        live.sort((a, b) -> Long.compare(a.getValue()[0], b.getValue()[0]));
+        try {
+            FileChannel channel = channel();
+            long position = 0;
+            for (Entry<String, long[]> entry : live) {
+                long[] location = entry.getValue();
+                if (location[0] != position) {
+                    ByteBuffer buffer = readRecord(location);
+                    buffer.flip();
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer, position + buffer.position());
+                    }
+                    location[0] = position;
+                }
+                position += location[1];
+            }
+            channel.truncate(position);
+            end = position;
+            garbage = 0;
+        } catch (IOException e) {
+            throw new RuntimeException("Error compacting spill file [" + file + "]", e);
+        }
+    }
+
+    private ByteBuffer readRecord(long[] location) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) location[1]);
+        while (buffer.hasRemaining()) {
+            if (channel().read(buffer, location[0] + buffer.position()) < 0) {
+                throw new IOException("Spill record beyond the end of the file");
+            }
+        }
+        return buffer;
+    }
+
+    private FileChannel channel() throws IOException {
+        if (spill == null) {
+            // A spill file left by an earlier run holds nothing this one can use
+            spill = new RandomAccessFile(file, "rw");
+            spill.setLength(0);
+        }
+        return spill.getChannel();
+    }
+}
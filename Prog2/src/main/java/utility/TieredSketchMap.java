@@ -0,0 +1,43 @@
+package utility;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Per-airport distinct aircraft sketches of each carrier kept in a {@link TieredMap}, with a budget of carrier
+ * sketches on the heap. A sketch takes 2^precision bytes, so it is by far the larger part of an airport's state.
+ */
+public class TieredSketchMap extends TieredMap<Map<String, HyperLogLog>> {
+    // Keeps about budget carrier sketches on the heap and spills the rest to the given file
+    public TieredSketchMap(long budget, File file) {
+        super(budget, file);
+    }
+
+    @Override
+    protected long weight(Map<String, HyperLogLog> sketches) {
+        return sketches.size();
+    }
+
+    @Override
+    protected void writeValue(Map<String, HyperLogLog> sketches, DataOutputStream out) throws IOException {
+        out.writeInt(sketches.size());
+        for (Map.Entry<String, HyperLogLog> carrier : sketches.entrySet()) {
+            out.writeUTF(carrier.getKey());
+            carrier.getValue().write(out);
+        }
+    }
+
+    @Override
+    protected Map<String, HyperLogLog> readValue(DataInputStream in) throws IOException {
+        int carriers = in.readInt();
+        Map<String, HyperLogLog> sketches = new HashMap<>(carriers * 2);
+        for (int i = 0; i < carriers; i++) {
+            sketches.put(in.readUTF(), HyperLogLog.read(in));
+        }
+        return sketches;
+    }
+}
@@ -0,0 +1,62 @@
+package utility;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Stage timestamps of a sampled tuple, from the spout reading its state to the count it ends up in. Each stage
+ * adds its stamp with stamp(), which returns a new trace, so that a trace shared by several tuples, such as the
+ * one of a batch, is never changed under another tuple.
+ * <p>
+ * The stamps are System.nanoTime() values, which can only be compared within one JVM: the intervals are
+ * meaningful when the stages run in one worker, as in a LocalCluster.
+ */
+public class Trace implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    // Not final, so that the serializer can fill in an instance made by the constructor below
+    private String[] stages;
+    private long[] nanos;
+
+    // For the serializer
+    private Trace() {
+        this(new String[0], new long[0]);
+    }
+
+    private Trace(String[] stages, long[] nanos) {
+        this.stages = stages;
+        this.nanos = nanos;
+    }
+
+    // A trace with its first stage stamped now
+    public static Trace start(String stage) {
+        return start(stage, System.nanoTime());
+    }
+
+    // A trace with its first stage stamped at the given System.nanoTime()
+    public static Trace start(String stage, long nanos) {
+        return new Trace(new String[]{stage}, new long[]{nanos});
+    }
+
+    // This trace with one more stage, stamped now
+    public Trace stamp(String stage) {
+        long now = System.nanoTime();
+        String[] moreStages = Arrays.copyOf(stages, stages.length + 1);
+        long[] moreNanos = Arrays.copyOf(nanos, nanos.length + 1);
+        moreStages[stages.length] = stage;
+        moreNanos[nanos.length] = now;
+        return new Trace(moreStages, moreNanos);
+    }
+
+    public int getStageCount() {
+        return stages.length;
+    }
+
+    public String getStage(int i) {
+        return stages[i];
+    }
+
+    public long getNanos(int i) {
+        return nanos[i];
+    }
+}
@@ -0,0 +1,59 @@
+package utility;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Latency histograms of the sampled traces: one per pair of consecutive stages, such as "spout-emit" to
+ * "hub-receive" (transfer: queueing and serialization) or "hub-receive" to "hub-emit" (matching), plus one from
+ * the first stage to the last. The report gives count, mean, quantiles and max in microseconds.
+ */
+public class TraceReport {
+    public static final String END_TO_END = "end-to-end";
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99};
+
+    // Histograms by interval, in the order the intervals are first seen
+    private final Map<String, LogHistogram> intervals = new LinkedHashMap<>();
+
+    public void add(Trace trace) {
+        for (int i = 1; i < trace.getStageCount(); i++) {
+            add(trace.getStage(i - 1) + " -> " + trace.getStage(i), trace.getNanos(i) - trace.getNanos(i - 1));
+        }
+        if (trace.getStageCount() > 1) {
+            add(END_TO_END, trace.getNanos(trace.getStageCount() - 1) - trace.getNanos(0));
+        }
+    }
+
+    private void add(String interval, long nanos) {
+        LogHistogram histogram = intervals.get(interval);
+        if (histogram == null) {
+            // 1 microsecond resolution up to a minute
+            histogram = new LogHistogram(1, 60000000);
+            intervals.put(interval, histogram);
+        }
+        histogram.add(nanos / 1000.0);
+    }
+
+    public Map<String, LogHistogram> getIntervals() {
+        return intervals;
+    }
+
+    // Writes one "trace-latency" record per interval
+    public void write(ResultSink sink) {
+        for (Map.Entry<String, LogHistogram> interval : intervals.entrySet()) {
+            LogHistogram histogram = interval.getValue();
+            ResultRecord record = ResultRecord.of("trace-latency")
+                    .with("interval", interval.getKey())
+                    .with("count", histogram.getCount())
+                    .with("meanMicros", round(histogram.getMean()));
+            for (double quantile : QUANTILES) {
+                record.with("p" + Math.round(quantile * 100) + "Micros", round(histogram.quantile(quantile)));
+            }
+            sink.write(record.with("maxMicros", round(histogram.getMax())));
+        }
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+}
@@ -0,0 +1,40 @@
+package utility;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Combined watermark of the tasks that feed a bolt: the smallest of their latest watermarks, so that it only
+ * passes a time once every input has. Until each of the given number of tasks has sent a watermark, there is
+ * none (Long.MIN_VALUE).
+ */
+public class WatermarkTracker {
+    private final int sources;
+    private final Map<Integer, Long> watermarks = new HashMap<>();
+    private long watermark = Long.MIN_VALUE;
+
+    public WatermarkTracker(int sources) {
+        this.sources = sources;
+    }
+
+    // Records the watermark of a source task; true if the combined watermark moved forward
+    public boolean update(int source, long sourceWatermark) {
+        watermarks.merge(source, sourceWatermark, Math::max);
+        if (watermarks.size() < sources) {
+            return false;
+        }
+        long combined = Long.MAX_VALUE;
+        for (long value : watermarks.values()) {
+            combined = Math.min(combined, value);
+        }
+        if (combined <= watermark) {
+            return false;
+        }
+        watermark = combined;
+        return true;
+    }
+
+    public long getWatermark() {
+        return watermark;
+    }
+}